@@ -1,11 +1,17 @@
 package lassie;
 
+import lassie.awshandlers.AwsHandlerFactory;
+import lassie.awshandlers.ClientRegistry;
+import lassie.awshandlers.RateLimiters;
+import lassie.awshandlers.S3BucketCache;
 import lassie.config.Account;
 import lassie.config.Config;
 import lassie.config.ConfigReader;
 import lassie.config.YamlReader;
+import lassie.event.EventDispatcher;
 import lassie.mocks.ConfigReaderMock;
 import lassie.mocks.LogFetcherMock;
+import lassie.model.Log;
 import lassie.resourcetagger.ResourceTagger;
 import lassie.resourcetagger.ResourceTaggerFactory;
 import lassie.resourcetagger.UnsupportedResourceTypeException;
@@ -13,14 +19,24 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class Application {
     private final static Logger logger = LogManager.getLogger(Application.class);
     public static boolean mockMode = false;
     public static boolean DRY_RUN;
+    private static final int PIPELINE_CAPACITY = 1;
+    private static final Map<String, String> PREREQUISITES = Collections.singletonMap("EBSVOLUME", "EC2INSTANCE");
     private final DateInterpreter dateInterpreter;
+    private final ClientRegistry clients;
+    private final S3BucketCache s3BucketCache = new S3BucketCache();
+    private final RateLimiters rateLimiters = new RateLimiters();
     private LogFetcher logFetcher;
+    private WatermarkStore watermarkStore;
     private ResourceTaggerFactory resourceTaggerFactory;
     private Config config;
 
@@ -32,22 +48,69 @@ public class Application {
         ConfigReader configReader = mockMode ? new ConfigReaderMock() : new YamlReader();
         this.config = configReader.readConfiguration();
         DRY_RUN = config.isDryRun();
-        this.logFetcher = mockMode ? new LogFetcherMock() : new S3LogFetcher();
-        this.resourceTaggerFactory = !mockMode ? new ResourceTaggerFactory() : null;
+        this.clients = new ClientRegistry(config.getAsyncThreads());
+        this.logFetcher = mockMode ? new LogFetcherMock() : createS3LogFetcher();
+        this.resourceTaggerFactory = !mockMode ? createResourceTaggerFactory() : null;
         this.dateInterpreter = new DateInterpreter();
     }
 
+    private ResourceTaggerFactory createResourceTaggerFactory() {
+        return new ResourceTaggerFactory(
+                new AwsHandlerFactory(clients, s3BucketCache, rateLimiters, config.getEc2PageSize()));
+    }
+
+    private LogFetcher createS3LogFetcher() {
+        LogCache cache = config.getCacheSize() > 0
+                ? new LogCache(config.getCacheFolder(), config.getCacheSize())
+                : null;
+        this.watermarkStore = config.getWatermarkFile() != null
+                ? new WatermarkStore(config.getWatermarkFile())
+                : null;
+        return new S3LogFetcher(config, clients, cache, watermarkStore);
+    }
+
     public void run(String[] args) {
         List<Account> accounts = config.getAccounts();
         setDefaultConfigIfNotOverridden(accounts);
+        List<AccountRegion> accountRegions = accountRegions(accounts);
+        EventDispatcher eventDispatcher = createEventDispatcher(accountRegions);
         logFetcher.createTmpFolders();
         String fromDate = dateInterpreter.interpret(args);
-        logFetcher.addLogsToAccount(fromDate, accounts);
-        tagResources(accounts);
-        logFetcher.clearLogs();
+        TaggingScheduler scheduler = new TaggingScheduler(config.getTaggingThreads(),
+                config.getTaggingThreadsPerAccount());
+        try {
+            new Pipeline<AccountRegion>(PIPELINE_CAPACITY)
+                    .stage("fetch", unit ->
+                            logFetcher.addLogsToAccount(fromDate, unit.account, unit.region, eventDispatcher))
+                    .stage("parse", unit -> dispatchEvents(unit.account, unit.region, eventDispatcher))
+                    .stage("tag", unit -> scheduleTagging(unit.account, unit.region, unit.resourceTaggers,
+                            scheduler))
+                    .run(accountRegions);
+            scheduler.awaitCompletion();
+            eventDispatcher.logStatistics();
+            s3BucketCache.logStatistics();
+            rateLimiters.logStatistics();
+            logFetcher.clearLogs();
+            commitWatermarks();
+        } finally {
+            scheduler.shutdown();
+            logFetcher.shutdown();
+            clients.shutdown();
+        }
         logger.info("Application completed");
     }
 
+    private void commitWatermarks() {
+        if (watermarkStore == null) {
+            return;
+        }
+        if (DRY_RUN) {
+            logger.info("Dry run. Watermarks not committed");
+            return;
+        }
+        watermarkStore.commit();
+    }
+
     private void setDefaultConfigIfNotOverridden(List<Account> accounts) {
         for (Account account : accounts) {
             if (account.getOwnerTag() == null) {
@@ -59,32 +122,96 @@ public class Application {
             if (account.getRegions() == null) {
                 account.setRegions(config.getRegions());
             }
+            if (account.getDownloadThreads() == null) {
+                account.setDownloadThreads(config.getDownloadThreads());
+            }
         }
     }
 
-    private void tagResources(List<Account> accounts) {
+    private EventDispatcher createEventDispatcher(List<AccountRegion> accountRegions) {
+        EventDispatcher eventDispatcher = new EventDispatcher();
+        accountRegions.forEach(accountRegion -> accountRegion.resourceTaggers.values()
+                .forEach(tagger -> eventDispatcher.register(tagger.getEventExtractors())));
+        return eventDispatcher;
+    }
+
+    /**
+     * Lists the regions of all the accounts. Each region is passed through the pipeline on its own, so no more than
+     * a few regions are downloaded and parsed at any time. Every region gets taggers of its own, which are created
+     * up front so their extractors can be registered before any log is parsed.
+     */
+    private List<AccountRegion> accountRegions(List<Account> accounts) {
+        List<AccountRegion> accountRegions = new ArrayList<>();
         for (Account account : accounts) {
-            List<String> resourceTypes = account.getResourceTypes();
-            resourceTypes = (resourceTypes == null) ? config.getResourceTypes() : resourceTypes;
+            for (String region : account.getRegions()) {
+                accountRegions.add(new AccountRegion(account, region,
+                        createResourceTaggers(account.getResourceTypes())));
+            }
+        }
+        return accountRegions;
+    }
 
-            List<ResourceTagger> resourceTaggers = createResourceTaggers(resourceTypes);
+    /**
+     * Extracts the events of the region and deletes its log files, which are no longer needed once parsed.
+     */
+    private void dispatchEvents(Account account, String region, EventDispatcher eventDispatcher) {
+        Log log = account.getLog(region);
+        if (log == null || log.getFilePaths().isEmpty()) {
+            return;
+        }
+        logger.info("Extracting events from log files for account: {} region: {}", account.getAccountId(), region);
+        log.setEvents(eventDispatcher.dispatch(log.getFilePaths()));
+        logFetcher.clearLog(log);
+        logger.info("Done extracting events");
+    }
 
-            for (ResourceTagger resourceTagger : resourceTaggers) {
-                resourceTagger.tagResources(account);
-            }
+    /**
+     * Schedules one unit per resource type of the region. The taggers of a region are not shared with other regions,
+     * so the units can run concurrently. A resource type that needs the tags of another type is tagged in the unit of
+     * that type, after it, so EBS volumes can inherit the owners of the instances tagged in the same run.
+     */
+    private void scheduleTagging(Account account, String region, Map<String, ResourceTagger> resourceTaggers,
+                                 TaggingScheduler scheduler) {
+        Log log = account.getLog(region);
+        if (log == null) {
+            return;
+        }
+        Set<String> resourceTypes = resourceTaggers.keySet();
+        Map<String, List<String>> units = new LinkedHashMap<>();
+        for (String resourceType : resourceTypes) {
+            String unit = findPrerequisite(resourceType, resourceTypes);
+            units.computeIfAbsent(unit == null ? resourceType : unit, type -> new ArrayList<>()).add(resourceType);
         }
+        units.forEach((unit, unitTypes) -> {
+            unitTypes.remove(unit);
+            unitTypes.add(0, unit);
+            List<ResourceTagger> unitTaggers = new ArrayList<>();
+            unitTypes.forEach(resourceType -> unitTaggers.add(resourceTaggers.get(resourceType)));
+            scheduler.submit(account.getAccountId(),
+                    () -> unitTaggers.forEach(resourceTagger -> resourceTagger.tagResources(account, log)));
+        });
+    }
 
+    /**
+     * @return the resource type that must be tagged before the given one, or null if there is none in the run
+     */
+    private String findPrerequisite(String resourceType, Set<String> resourceTypes) {
+        String prerequisite = PREREQUISITES.get(resourceType.toUpperCase());
+        return resourceTypes.stream()
+                .filter(type -> type.equalsIgnoreCase(prerequisite))
+                .findFirst()
+                .orElse(null);
     }
 
-    private List<ResourceTagger> createResourceTaggers(List<String> resourceTypes) {
+    private Map<String, ResourceTagger> createResourceTaggers(List<String> resourceTypes) {
         if (resourceTypes == null)
             throw new IllegalArgumentException("No resource types found in config file");
 
         logger.info("Creating resource taggers");
-        List<ResourceTagger> resourceTaggers = new ArrayList<>();
+        Map<String, ResourceTagger> resourceTaggers = new LinkedHashMap<>();
         for (String resourceType : resourceTypes) {
             try {
-                resourceTaggers.add(resourceTaggerFactory.getResourceTagger(resourceType));
+                resourceTaggers.put(resourceType, resourceTaggerFactory.getResourceTagger(resourceType));
             } catch (UnsupportedResourceTypeException e) {
                 logger.warn("Unsupported resource type: ", e);
                 e.printStackTrace();
@@ -97,4 +224,16 @@ public class Application {
     public void setResourceTaggerFactory(ResourceTaggerFactory resourceTaggerFactory) {
         this.resourceTaggerFactory = resourceTaggerFactory;
     }
+
+    private static class AccountRegion {
+        private final Account account;
+        private final String region;
+        private final Map<String, ResourceTagger> resourceTaggers;
+
+        AccountRegion(Account account, String region, Map<String, ResourceTagger> resourceTaggers) {
+            this.account = account;
+            this.region = region;
+            this.resourceTaggers = resourceTaggers;
+        }
+    }
 }
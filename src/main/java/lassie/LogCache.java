@@ -0,0 +1,187 @@
+package lassie;
+
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A persistent cache of downloaded CloudTrail objects. Objects are stored, still zipped, in a file named after a hash
+ * of their bucket, key and ETag, so a changed object is never served from the cache. The cache survives between runs
+ * and is kept below its size cap by evicting the least recently used objects. The last modified time of a file is
+ * used as its last access time.
+ */
+public class LogCache {
+    private static final Logger logger = LogManager.getLogger(LogCache.class);
+    private final Path folder;
+    private final long maxSize;
+    private final AtomicLong size = new AtomicLong();
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+    private final AtomicInteger evictedObjects = new AtomicInteger();
+    private final AtomicLong evictedBytes = new AtomicLong();
+
+    public LogCache(String folder, long maxSizeMb) {
+        this.folder = Paths.get(folder);
+        this.maxSize = maxSizeMb * 1024 * 1024;
+        try {
+            Files.createDirectories(this.folder);
+            try (Stream<Path> files = Files.list(this.folder)) {
+                for (Path file : files.collect(Collectors.toList())) {
+                    if (isCached(file)) {
+                        size.addAndGet(fileSize(file));
+                    } else {
+                        Files.deleteIfExists(file);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not open log cache: " + folder, e);
+        }
+        logger.info("Log cache opened: {}. Size: {} of {} bytes", folder, size.get(), maxSize);
+        evict();
+    }
+
+    /**
+     * Opens the cached content of the object, if there is one, and marks it as recently used.
+     *
+     * @return the zipped content, or null if the object is not cached
+     */
+    public InputStream open(S3ObjectSummary summary) throws IOException {
+        Path file = fileFor(summary);
+        if (!Files.isRegularFile(file)) {
+            misses.incrementAndGet();
+            return null;
+        }
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        hits.incrementAndGet();
+        logger.debug("Cache hit: {}", summary.getKey());
+        return Files.newInputStream(file);
+    }
+
+    /**
+     * Stores the content of the object in the cache and opens it from there. The content is written to a temporary
+     * file first, so that an interrupted download never leaves a partial object behind. The stored object is never
+     * evicted to make room for itself, even if it is larger than the cache.
+     *
+     * @return the zipped content, read from the cache
+     */
+    public InputStream store(S3ObjectSummary summary, InputStream content) throws IOException {
+        Path file = fileFor(summary);
+        Path tmpFile = Files.createTempFile(folder, null, ".tmp");
+        InputStream cached;
+        try {
+            long written = Files.copy(content, tmpFile, StandardCopyOption.REPLACE_EXISTING);
+            synchronized (this) {
+                long replaced = Files.isRegularFile(file) ? fileSize(file) : 0;
+                Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                size.addAndGet(written - replaced);
+                cached = Files.newInputStream(file);
+            }
+        } finally {
+            Files.deleteIfExists(tmpFile);
+        }
+        evict(file);
+        return cached;
+    }
+
+    /**
+     * Deletes the least recently used objects until the cache is below its size cap.
+     */
+    public void evict() {
+        evict(null);
+    }
+
+    /**
+     * Deletes the least recently used objects, except the given one, until the cache is below its size cap.
+     */
+    private synchronized void evict(Path keep) {
+        if (size.get() <= maxSize) {
+            return;
+        }
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(folder)) {
+            files = stream.filter(this::isCached)
+                    .filter(file -> !file.equals(keep))
+                    .sorted(Comparator.comparingLong(this::lastModified))
+                    .collect(Collectors.toCollection(ArrayList::new));
+        } catch (IOException e) {
+            logger.error("Could not list log cache: ", e);
+            return;
+        }
+        for (Path file : files) {
+            if (size.get() <= maxSize) {
+                break;
+            }
+            long fileSize = fileSize(file);
+            try {
+                Files.deleteIfExists(file);
+                size.addAndGet(-fileSize);
+                evictedObjects.incrementAndGet();
+                evictedBytes.addAndGet(fileSize);
+            } catch (IOException e) {
+                logger.error("Could not evict: {}", file, e);
+            }
+        }
+    }
+
+    public void logStatistics() {
+        logger.info("Log cache: {} hits, {} misses, {} objects ({} bytes) evicted. Size: {} of {} bytes",
+                hits.get(), misses.get(), evictedObjects.get(), evictedBytes.get(), size.get(), maxSize);
+    }
+
+    private Path fileFor(S3ObjectSummary summary) {
+        String id = summary.getBucketName() + "/" + summary.getKey() + "/" + summary.getETag();
+        return folder.resolve(sha256(id) + ".gz");
+    }
+
+    private boolean isCached(Path file) {
+        return file.getFileName().toString().endsWith(".gz");
+    }
+
+    private String sha256(String value) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : hash) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private long fileSize(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
@@ -1,14 +1,17 @@
 package lassie;
 
 import lassie.config.Account;
+import lassie.event.EventDispatcher;
 import lassie.model.Log;
 
-import java.util.List;
-
 public interface LogFetcher {
-    void addLogsToAccount(String startDate, List<Account> accounts);
+    void addLogsToAccount(String startDate, Account account, String region, EventDispatcher eventDispatcher);
 
     void createTmpFolders();
 
+    void clearLog(Log log);
+
     void clearLogs();
+
+    void shutdown();
 }
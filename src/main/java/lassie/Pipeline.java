@@ -0,0 +1,157 @@
+package lassie;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Runs items through a chain of stages. Every stage but the last one runs on its own thread, and the stages are
+ * connected by bounded queues. A stage that gets ahead of the next one blocks once the queue between them is full,
+ * so no more than the capacity of the queues is ever waiting between two stages. The last stage runs on the calling
+ * thread.
+ */
+public class Pipeline<T> {
+    private static final Logger logger = LogManager.getLogger(Pipeline.class);
+    private static final Object END = new Object();
+    private final int capacity;
+    private final List<String> names = new ArrayList<>();
+    private final List<Consumer<T>> stages = new ArrayList<>();
+
+    /**
+     * @param capacity the number of items that can wait between two stages
+     */
+    public Pipeline(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1. Got: " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    public Pipeline<T> stage(String name, Consumer<T> stage) {
+        names.add(name);
+        stages.add(stage);
+        return this;
+    }
+
+    /**
+     * Passes all the items through the stages, in order, and returns once the last stage has processed them all.
+     * If a stage fails, the stages before it are stopped, the stages after it process what they already received,
+     * and the failure is rethrown.
+     */
+    public void run(List<T> items) {
+        if (stages.isEmpty()) {
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(stages.size() - 1, 1), runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        });
+        List<Future<?>> futures = new ArrayList<>();
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        BlockingQueue<Object> input = null;
+        try {
+            for (int i = 0; i < stages.size() - 1; i++) {
+                BlockingQueue<Object> output = new ArrayBlockingQueue<>(capacity);
+                BlockingQueue<Object> stageInput = input;
+                String name = names.get(i);
+                Consumer<T> stage = stages.get(i);
+                futures.add(executor.submit(() -> {
+                    Thread.currentThread().setName("pipeline-" + name);
+                    try {
+                        process(stageInput, items, item -> {
+                            stage.accept(item);
+                            put(output, item);
+                        });
+                    } catch (PipelineInterruptedException e) {
+                        logger.debug("Stage {} stopped", name);
+                        stop(output);
+                        return null;
+                    } catch (RuntimeException e) {
+                        logger.error("Stage {} failed: ", name, e);
+                        failure.compareAndSet(null, e);
+                    }
+                    put(output, END);
+                    return null;
+                }));
+                input = output;
+            }
+            process(input, items, stages.get(stages.size() - 1));
+        } finally {
+            executor.shutdownNow();
+        }
+        awaitStages(futures);
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void process(BlockingQueue<Object> input, List<T> items, Consumer<T> stage) {
+        if (input == null) {
+            items.forEach(stage);
+            return;
+        }
+        Object item;
+        while ((item = take(input)) != END) {
+            stage.accept((T) item);
+        }
+    }
+
+    private void awaitStages(List<Future<?>> futures) {
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the pipeline", e);
+            } catch (ExecutionException e) {
+                logger.debug("Stage stopped while passing on its end: ", e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Ends the output of a stage that has been stopped. A stage is only stopped once the stages after it have stopped
+     * taking items, so the items in the queue are dropped to make room for the end without blocking.
+     */
+    private void stop(BlockingQueue<Object> output) {
+        output.clear();
+        output.offer(END);
+    }
+
+    private Object take(BlockingQueue<Object> queue) {
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            throw new PipelineInterruptedException(e);
+        }
+    }
+
+    private void put(BlockingQueue<Object> queue, Object item) {
+        try {
+            queue.put(item);
+        } catch (InterruptedException e) {
+            throw new PipelineInterruptedException(e);
+        }
+    }
+
+    /**
+     * Thrown in a stage that is stopped because a later stage has failed.
+     */
+    private static class PipelineInterruptedException extends RuntimeException {
+        PipelineInterruptedException(InterruptedException cause) {
+            super(cause);
+        }
+    }
+}
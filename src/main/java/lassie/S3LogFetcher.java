@@ -1,20 +1,21 @@
 package lassie;
 
-import com.amazonaws.auth.AWSStaticCredentialsProvider;
-import com.amazonaws.auth.BasicAWSCredentials;
-import com.amazonaws.regions.Regions;
 import com.amazonaws.services.s3.AmazonS3;
-import com.amazonaws.services.s3.AmazonS3ClientBuilder;
 import com.amazonaws.services.s3.model.*;
+import lassie.awshandlers.ClientRegistry;
 import lassie.config.Account;
+import lassie.config.Config;
+import lassie.event.EventDispatcher;
+import lassie.event.EventExtractor;
+import lassie.event.MalformedLogException;
+import lassie.model.Event;
 import lassie.model.Log;
 import org.apache.commons.io.FileUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.EOFException;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -23,59 +24,110 @@ import java.nio.file.StandardCopyOption;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipException;
 
 public class S3LogFetcher implements LogFetcher {
     private static final Logger logger = LogManager.getLogger(S3LogFetcher.class);
-    private AmazonS3 s3;
-    private Path tmpFolderZipped;
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
     private Path tmpFolderUnzipped;
     private DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy/MM/dd");
     private String tmpFolder = "tmp";
+    private boolean streamLogs;
+    private WatermarkStore watermarks;
+    private ClientRegistry clients;
+    private final S3ObjectDownloader downloader;
+    private final S3ObjectLister lister;
 
-    public void addLogsToAccount(String startDate, List<Account> accounts) {
+    /**
+     * Creates a fetcher whose download and list threads are shared by all the accounts of the run, so the configured
+     * numbers of threads are global caps however many accounts are fetched.
+     */
+    public S3LogFetcher(Config config, ClientRegistry clients, LogCache cache, WatermarkStore watermarks) {
+        this.downloader = new S3ObjectDownloader(config.getDownloadThreads(), cache);
+        this.lister = new S3ObjectLister(config.getListThreads());
+        this.streamLogs = config.isStreamLogs();
+        this.watermarks = watermarks;
+        this.clients = clients;
+    }
+
+    /**
+     * Fetches the logs of one region of the account, from the start date or the watermark of the region, and adds
+     * them to the account as a single log.
+     */
+    public void addLogsToAccount(String startDate, Account account, String region, EventDispatcher eventDispatcher) {
         LocalDate end = LocalDate.now();
-        LocalDate start = LocalDate.parse(startDate);
-        List<LocalDate> totalDates = new ArrayList<>();
-        logger.info("Getting logs for dates: {} to {}", start, end);
-
-        for (Account account : accounts) {
-            BasicAWSCredentials awsCredentials = new BasicAWSCredentials(account.getAccessKeyId(),
-                    account.getSecretAccessKey());
-            logger.info("Instantiating S3 client");
-            this.s3 = AmazonS3ClientBuilder.standard()
-                    .withCredentials(new AWSStaticCredentialsProvider(awsCredentials))
-                    .withRegion(Regions.fromName(account.getBucketRegion()))
-                    .build();
-
-            logger.info("S3 client instantiated");
-
-            while (!start.isAfter(end)) {
-                totalDates.add(start);
-                start = start.plusDays(1);
-            }
+        String watermark = getWatermark(account, region);
+        LocalDate start = watermark == null ? LocalDate.parse(startDate) : watermarkDate(account, region, watermark);
+        logger.info("Getting logs for account {} in region {} for dates: {} to {}",
+                account.getAccountId(), region, start, end);
+        AmazonS3 s3 = clients.s3(account.getAccessKeyId(), account.getSecretAccessKey(), account.getBucketRegion());
 
-            for (LocalDate date : totalDates) {
-                for (String region : account.getRegions()) {
-                    List<S3ObjectSummary> summaries = getObjectSummaries(date.format(formatter), account, region);
-                    List<String> filePaths = downloadLogs(account, summaries);
-                    account.addLog(createLog(region, filePaths));
-                }
-            }
+        List<ListObjectsV2Request> requests = new ArrayList<>();
+        List<List<S3ObjectSummary>> logSummaries = new ArrayList<>();
+        for (LocalDate date = start; !date.isAfter(end); date = date.plusDays(1)) {
+            requests.add(createListRequest(date.format(formatter), account, region, watermark));
+            logSummaries.add(Collections.synchronizedList(new ArrayList<>()));
+        }
+        List<S3ObjectSummary> summaries = new ArrayList<>();
+
+        if (streamLogs) {
+            Map<String, Map<EventExtractor, List<Event>>> events = streamEvents(s3, eventDispatcher, account,
+                    requests, logSummaries);
+            logSummaries.forEach(summaries::addAll);
+            Log log = new Log(region, new ArrayList<>());
+            summaries.stream()
+                    .map(summary -> events.get(summary.getKey()))
+                    .filter(Objects::nonNull)
+                    .forEach(log::addEvents);
+            account.addLog(log);
+            advanceWatermark(account, region, summaries, summary -> events.containsKey(summary.getKey()));
+        } else {
+            Set<String> corruptFiles = ConcurrentHashMap.newKeySet();
+            Set<String> downloadedFiles = new HashSet<>(downloadAndUnzip(s3, account, requests, logSummaries,
+                    corruptFiles));
+            logSummaries.forEach(summaries::addAll);
+            List<String> filePaths = summaries.stream()
+                    .map(summary -> fileName(summary.getKey()))
+                    .filter(downloadedFiles::contains)
+                    .filter(filename -> !corruptFiles.contains(filename))
+                    .map(this::unzippedFilePath)
+                    .collect(Collectors.toList());
+            account.addLog(createLog(region, filePaths));
+            advanceWatermark(account, region, summaries,
+                    summary -> downloadedFiles.contains(fileName(summary.getKey())));
         }
-        logger.info("Logs downloaded for all the given dates");
+        logger.info("Logs downloaded for account {} in region {}", account.getAccountId(), region);
+    }
+
+    public void shutdown() {
+        lister.logStatistics();
+        lister.shutdown();
+        downloader.logStatistics();
+        downloader.shutdown();
     }
 
     public void createTmpFolders() {
+        if (streamLogs) {
+            logger.debug("Streaming logs. No temp folders needed");
+            return;
+        }
         logger.debug("Creating temp folders");
         try {
             if (!Files.isDirectory(Paths.get(tmpFolder))) {
                 Files.createDirectory(Paths.get(tmpFolder));
             }
 
-            tmpFolderZipped = Files.createTempDirectory(Paths.get(tmpFolder + "/"), null);
-            logger.debug("TmpFolderZipped: {}", tmpFolderZipped);
             tmpFolderUnzipped = Files.createTempDirectory(Paths.get(tmpFolder + "/"), null);
             logger.debug("TmpFolderUnzipped: {}", tmpFolderUnzipped);
         } catch (IOException e) {
@@ -85,7 +137,29 @@ public class S3LogFetcher implements LogFetcher {
         logger.info("Temp folders created");
     }
 
+    /**
+     * Deletes the unzipped files of a log once its events have been extracted, so the temp folder only holds the
+     * logs that are still being fetched or parsed.
+     */
+    public void clearLog(Log log) {
+        if (streamLogs) {
+            return;
+        }
+        for (String filePath : log.getFilePaths()) {
+            try {
+                Files.deleteIfExists(Paths.get(filePath));
+            } catch (IOException e) {
+                logger.error("Log file could not be deleted: {}", filePath, e);
+                e.printStackTrace();
+            }
+        }
+        log.getFilePaths().clear();
+    }
+
     public void clearLogs() {
+        if (streamLogs) {
+            return;
+        }
         try {
             FileUtils.cleanDirectory(new File(tmpFolder));
             logger.info("Temp-directory cleaned");
@@ -95,75 +169,169 @@ public class S3LogFetcher implements LogFetcher {
         }
     }
 
-    private List<S3ObjectSummary> getObjectSummaries(String date, Account account, String region) {
-        logger.info("Getting object summaries for date: {}", date);
-        ListObjectsV2Request request = new ListObjectsV2Request()
-                .withBucketName(account.getS3Url().getBucket())
-                .withPrefix(account.getS3Url().getKey()
-                        + "/AWSLogs/"
-                        + account.getAccountId() + "/"
-                        + "CloudTrail/"
-                        + region + "/"
-                        + date + "/");
-        logger.debug("Get object summaries complete");
-        return s3.listObjectsV2(request).getObjectSummaries();
+    private String getWatermark(Account account, String region) {
+        if (watermarks == null) {
+            return null;
+        }
+        String watermark = watermarks.get(account.getAccountId(), region);
+        if (watermark != null && !watermark.startsWith(logPrefix(account, region))) {
+            logger.warn("Ignoring watermark outside of the log prefix: {}", watermark);
+            return null;
+        }
+        return watermark;
     }
 
-    private List<String> downloadLogs(Account account, List<S3ObjectSummary> summaries) {
-        List<String> fileNames = downloadZip(account, summaries);
-        return unzipObject(fileNames);
+    /**
+     * Reads the date from the key of the watermark, which is the first date that can hold unprocessed objects.
+     */
+    private LocalDate watermarkDate(Account account, String region, String watermark) {
+        int dateStart = logPrefix(account, region).length();
+        LocalDate date = LocalDate.parse(watermark.substring(dateStart, dateStart + 10), formatter);
+        logger.info("Getting logs for region {} after watermark: {}", region, watermark);
+        return date;
     }
 
-    private List<String> downloadZip(Account account, List<S3ObjectSummary> summaries) {
-        logger.debug("Downloading zipped files");
-        List<String> fileNames = new ArrayList<>();
-        for (S3ObjectSummary objectSummary : summaries) {
-            String key = objectSummary.getKey();
-            try (S3Object s3Object = s3.getObject(new GetObjectRequest(account.getS3Url().getBucket(), key));
-                 S3ObjectInputStream objectContent = s3Object.getObjectContent()) {
-
-                String filename = s3Object.getKey().substring(key.lastIndexOf('/') + 1, key.length());
-                logger.debug("Downloading file: {}", filename);
-                Files.copy(objectContent,
-                        Paths.get(tmpFolderZipped + "/" + filename),
-                        StandardCopyOption.REPLACE_EXISTING);
-                fileNames.add(filename);
-            } catch (IOException e) {
-                logger.error("Could not download file: ", e);
-                e.printStackTrace();
+    /**
+     * Moves the watermark of the region to the last object that was processed, without passing an object that
+     * failed to download. Objects that failed to download are therefore fetched again by the next run. Corrupt
+     * objects, which can't be unzipped or parsed, count as processed in both modes. They would fail again on every
+     * run, so they are logged and skipped instead of holding back the watermark forever.
+     */
+    private void advanceWatermark(Account account, String region, List<S3ObjectSummary> summaries,
+                                  Predicate<S3ObjectSummary> processed) {
+        if (watermarks == null) {
+            return;
+        }
+        String watermark = null;
+        summaries.sort(Comparator.comparing(S3ObjectSummary::getKey));
+        for (S3ObjectSummary summary : summaries) {
+            if (!processed.test(summary)) {
+                break;
             }
+            watermark = summary.getKey();
+        }
+        if (watermark != null) {
+            watermarks.advance(account.getAccountId(), region, watermark);
+        }
+    }
+
+    private String logPrefix(Account account, String region) {
+        return account.getS3Url().getKey()
+                + "/AWSLogs/"
+                + account.getAccountId() + "/"
+                + "CloudTrail/"
+                + region + "/";
+    }
+
+    private ListObjectsV2Request createListRequest(String date, Account account, String region, String startAfter) {
+        logger.debug("Listing object summaries for region: {} date: {}", region, date);
+        return new ListObjectsV2Request()
+                .withBucketName(account.getS3Url().getBucket())
+                .withPrefix(logPrefix(account, region) + date + "/")
+                .withStartAfter(startAfter);
+    }
+
+    /**
+     * Lists the objects of all the requests and adds each of them to the batch as soon as its page arrives, so
+     * downloads start while the remaining prefixes are still being listed.
+     *
+     * @return the results of the batch, once all the listed objects have been handled
+     */
+    private <T> List<T> listObjects(AmazonS3 s3, List<ListObjectsV2Request> requests,
+                                    List<List<S3ObjectSummary>> logSummaries, S3ObjectDownloader.Batch<T> batch) {
+        logger.info("Getting object summaries for {} prefixes", requests.size());
+        try {
+            lister.list(s3, requests, (index, summaries) -> {
+                logSummaries.get(index).addAll(summaries);
+                summaries.forEach(batch::add);
+            });
+        } catch (RuntimeException e) {
+            batch.finish();
+            throw e;
         }
+        logger.debug("Get object summaries complete");
+        return batch.finish();
+    }
+
+    /**
+     * Unzips each object into the temp folder while it is being downloaded, so the zipped object is never stored.
+     * Objects that can't be unzipped are left out of the temp folder and added to the corrupt files.
+     *
+     * @return the names of the objects that were downloaded, including the corrupt ones
+     */
+    private List<String> downloadAndUnzip(AmazonS3 s3, Account account, List<ListObjectsV2Request> requests,
+                                          List<List<S3ObjectSummary>> logSummaries, Set<String> corruptFiles) {
+        logger.debug("Downloading zipped files");
+        S3ObjectDownloader.Batch<String> batch = downloader.start(s3, account.getDownloadThreads(),
+                (summary, content) -> {
+                    String filename = fileName(summary.getKey());
+                    logger.debug("Downloading file: {}", filename);
+                    try (GZIPInputStream gzipInputStream = new GZIPInputStream(content, STREAM_BUFFER_SIZE)) {
+                        Files.copy(gzipInputStream,
+                                Paths.get(unzippedFilePath(filename)),
+                                StandardCopyOption.REPLACE_EXISTING);
+                    } catch (IOException e) {
+                        if (!isCorrupt(e)) {
+                            throw e;
+                        }
+                        logger.error("Skipping corrupt object: {}", summary.getKey(), e);
+                        Files.deleteIfExists(Paths.get(unzippedFilePath(filename)));
+                        corruptFiles.add(filename);
+                    }
+                    return filename;
+                });
+        List<String> fileNames = listObjects(s3, requests, logSummaries, batch);
         logger.debug("Download complete");
         return fileNames;
     }
 
-    private List<String> unzipObject(List<String> filenames) {
-        logger.debug("Unzipping objects");
-        List<String> filePaths = new ArrayList<>();
-        for (String filename : filenames) {
-            logger.debug("Unzipping object: {}", filename);
-            String fileInputPath = tmpFolderZipped + "/" + filename;
-            String fileOutputPath = tmpFolderUnzipped + "/" + filename.substring(0, filename.length() - 3);
-            try (FileInputStream fileInputStream = new FileInputStream(fileInputPath);
-                 GZIPInputStream gzipInputStream = new GZIPInputStream(fileInputStream);
-                 FileOutputStream fileOutputStream = new FileOutputStream(fileOutputPath)) {
-
-                byte[] buffer = new byte[1024];
-                int len;
+    /**
+     * Streams each object through a GZIPInputStream straight into the event dispatcher, without writing anything
+     * to disk. Only the extracted events are kept in memory.
+     *
+     * @return the events of each object, mapped by object key
+     */
+    private Map<String, Map<EventExtractor, List<Event>>> streamEvents(AmazonS3 s3,
+                                                                       EventDispatcher eventDispatcher,
+                                                                       Account account,
+                                                                       List<ListObjectsV2Request> requests,
+                                                                       List<List<S3ObjectSummary>> logSummaries) {
+        logger.debug("Streaming zipped files");
+        Map<String, Map<EventExtractor, List<Event>>> events = new ConcurrentHashMap<>();
+        S3ObjectDownloader.Batch<String> batch = downloader.start(s3, account.getDownloadThreads(),
+                (summary, content) -> {
+                    try (GZIPInputStream gzipInputStream = new GZIPInputStream(content, STREAM_BUFFER_SIZE)) {
+                        logger.debug("Streaming file: {}", fileName(summary.getKey()));
+                        events.put(summary.getKey(), eventDispatcher.dispatch(gzipInputStream));
+                    } catch (IOException e) {
+                        if (!isCorrupt(e)) {
+                            throw e;
+                        }
+                        logger.error("Skipping corrupt object: {}", summary.getKey(), e);
+                        events.put(summary.getKey(), Collections.emptyMap());
+                    }
+                    return summary.getKey();
+                });
+        listObjects(s3, requests, logSummaries, batch);
+        logger.debug("Streaming complete");
+        return events;
+    }
 
-                while ((len = gzipInputStream.read(buffer)) != -1) {
-                    fileOutputStream.write(buffer, 0, len);
-                }
+    /**
+     * Tells the failures of the object itself, which would happen again on the next run, from failures to read it.
+     * GZIPInputStream throws an EOFException when the zipped content ends early, while a download that ends early
+     * fails in the SDK, which checks the length of the content.
+     */
+    private boolean isCorrupt(IOException e) {
+        return e instanceof ZipException || e instanceof EOFException || e instanceof MalformedLogException;
+    }
 
-                filePaths.add(fileOutputPath);
+    private String fileName(String key) {
+        return key.substring(key.lastIndexOf('/') + 1, key.length());
+    }
 
-            } catch (IOException e) {
-                logger.error("Could not unzip file: {}", filename, e);
-                e.printStackTrace();
-            }
-        }
-        logger.debug("Unzipping objects complete");
-        return filePaths;
+    private String unzippedFilePath(String filename) {
+        return tmpFolderUnzipped + "/" + filename.substring(0, filename.length() - 3);
     }
 
     private Log createLog(String region, List<String> filePaths) {
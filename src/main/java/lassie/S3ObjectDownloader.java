@@ -0,0 +1,188 @@
+package lassie;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class S3ObjectDownloader {
+    private static final Logger logger = LogManager.getLogger(S3ObjectDownloader.class);
+    private static final S3ObjectSummary END_OF_BATCH = new S3ObjectSummary();
+    private static final int QUEUED_OBJECTS_PER_WORKER = 4;
+    private final ExecutorService executor;
+    private final LogCache cache;
+    private final AtomicInteger downloadedObjects = new AtomicInteger();
+    private final AtomicInteger cachedObjects = new AtomicInteger();
+    private final AtomicInteger failedObjects = new AtomicInteger();
+    private final AtomicLong downloadedBytes = new AtomicLong();
+    private final long startTime = System.currentTimeMillis();
+
+    /**
+     * Creates a downloader backed by a pool of worker threads. The pool size is the global cap on the number of
+     * objects being fetched at the same time, regardless of how many accounts are downloading.
+     *
+     * @param threads the maximum number of concurrent downloads
+     * @param cache   the cache objects are read from and stored in, or null to always download them
+     */
+    public S3ObjectDownloader(int threads, LogCache cache) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Download threads must be at least 1. Got: " + threads);
+        }
+        this.cache = cache;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "s3-download-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts a batch of downloads. Objects can be added to the batch while earlier ones are already downloading,
+     * and each of them is passed to the handler as soon as it has been downloaded. At most maxConcurrency objects
+     * from the batch are in flight at once, and adding an object blocks while too many are waiting for a worker.
+     * An object that fails to download or to be handled is logged and left out of the result, without affecting
+     * the other objects. Objects found in the cache are not downloaded.
+     *
+     * @param s3             the client to download with
+     * @param maxConcurrency the maximum number of concurrent downloads for this batch
+     * @param handler        consumes the zipped content of the object and returns the result for it
+     * @return the batch to add the objects to
+     */
+    public <T> Batch<T> start(AmazonS3 s3, int maxConcurrency, ObjectHandler<T> handler) {
+        return new Batch<>(s3, Math.max(maxConcurrency, 1), handler);
+    }
+
+    private <T> T downloadObject(AmazonS3 s3, S3ObjectSummary summary, ObjectHandler<T> handler) {
+        try {
+            if (cache != null) {
+                try (InputStream cached = cache.open(summary)) {
+                    if (cached != null) {
+                        T result = handler.handle(summary, cached);
+                        cachedObjects.incrementAndGet();
+                        return result;
+                    }
+                }
+            }
+            try (S3Object s3Object = s3.getObject(new GetObjectRequest(summary.getBucketName(), summary.getKey()));
+                 InputStream content = cache == null
+                         ? s3Object.getObjectContent()
+                         : cache.store(summary, s3Object.getObjectContent())) {
+                T result = handler.handle(summary, content);
+                downloadedObjects.incrementAndGet();
+                downloadedBytes.addAndGet(summary.getSize());
+                return result;
+            }
+        } catch (IOException | RuntimeException e) {
+            failedObjects.incrementAndGet();
+            logger.error("Could not download object: {}", summary.getKey(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Logs the total number of objects and bytes downloaded, and the throughput since the downloader was created.
+     */
+    public void logStatistics() {
+        double seconds = Math.max(System.currentTimeMillis() - startTime, 1) / 1000.0;
+        logger.info("Downloaded {} objects ({} bytes), {} read from cache, {} failed, in {} s. "
+                        + "Throughput: {} objects/s, {} KB/s",
+                downloadedObjects.get(),
+                downloadedBytes.get(),
+                cachedObjects.get(),
+                failedObjects.get(),
+                String.format("%.1f", seconds),
+                String.format("%.1f", downloadedObjects.get() / seconds),
+                String.format("%.1f", downloadedBytes.get() / 1024.0 / seconds));
+        if (cache != null) {
+            cache.logStatistics();
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    public class Batch<T> {
+        private final BlockingQueue<S3ObjectSummary> queue;
+        private final List<T> results = Collections.synchronizedList(new ArrayList<>());
+        private final List<Future<?>> workers = new ArrayList<>();
+        private final AtomicInteger objects = new AtomicInteger();
+        private final AtomicLong bytes = new AtomicLong();
+        private final long batchStart = System.currentTimeMillis();
+
+        private Batch(AmazonS3 s3, int maxConcurrency, ObjectHandler<T> handler) {
+            this.queue = new ArrayBlockingQueue<>(maxConcurrency * QUEUED_OBJECTS_PER_WORKER);
+            for (int i = 0; i < maxConcurrency; i++) {
+                workers.add(executor.submit(() -> {
+                    S3ObjectSummary summary;
+                    while ((summary = queue.take()) != END_OF_BATCH) {
+                        T result = downloadObject(s3, summary, handler);
+                        if (result != null) {
+                            results.add(result);
+                        }
+                    }
+                    return null;
+                }));
+            }
+        }
+
+        public void add(S3ObjectSummary summary) {
+            objects.incrementAndGet();
+            bytes.addAndGet(summary.getSize());
+            put(summary);
+        }
+
+        /**
+         * Waits for all objects added to the batch to be downloaded and handled.
+         *
+         * @return the results of the successfully handled objects, in the order they were handled
+         */
+        public List<T> finish() {
+            workers.forEach(worker -> put(END_OF_BATCH));
+            for (Future<?> worker : workers) {
+                try {
+                    worker.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while downloading objects", e);
+                } catch (ExecutionException e) {
+                    logger.error("Download worker failed: ", e.getCause());
+                }
+            }
+            long elapsed = Math.max(System.currentTimeMillis() - batchStart, 1);
+            logger.debug("Downloaded {}/{} objects ({} bytes) in {} ms using {} workers",
+                    results.size(), objects.get(), bytes.get(), elapsed, workers.size());
+            return new ArrayList<>(results);
+        }
+
+        private void put(S3ObjectSummary summary) {
+            try {
+                queue.put(summary);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while queueing objects", e);
+            }
+        }
+    }
+
+    public interface ObjectHandler<T> {
+        T handle(S3ObjectSummary summary, InputStream content) throws IOException;
+    }
+}
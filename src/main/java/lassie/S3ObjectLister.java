@@ -0,0 +1,104 @@
+package lassie;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class S3ObjectLister {
+    private static final Logger logger = LogManager.getLogger(S3ObjectLister.class);
+    private final ExecutorService executor;
+    private final AtomicInteger listedPages = new AtomicInteger();
+    private final AtomicLong listedObjects = new AtomicLong();
+
+    /**
+     * Creates a lister backed by a pool of worker threads, one prefix being listed per thread at a time.
+     *
+     * @param threads the maximum number of prefixes listed at the same time
+     */
+    public S3ObjectLister(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("List threads must be at least 1. Got: " + threads);
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "s3-list-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Lists the given prefixes concurrently, following the continuation token of every prefix until its listing is
+     * complete. Each page is passed to the handler as soon as it arrives, so the objects on it can be processed
+     * while the rest is still being listed. The handler is called from several threads at once.
+     *
+     * @param s3       the client to list with
+     * @param requests the listings to run, one per prefix
+     * @param handler  consumes the pages, together with the index of the request they belong to
+     * @throws RuntimeException the first failure of any listing, after all listings have stopped, since an
+     *                          incomplete listing would silently leave out objects
+     */
+    public void list(AmazonS3 s3, List<ListObjectsV2Request> requests, PageHandler handler) {
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < requests.size(); i++) {
+            int index = i;
+            futures.add(executor.submit(() -> listPrefix(s3, requests.get(index), index, handler)));
+        }
+        RuntimeException failure = null;
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while listing objects", e);
+            } catch (ExecutionException e) {
+                logger.error("Listing failed: ", e.getCause());
+                if (failure == null) {
+                    failure = e.getCause() instanceof RuntimeException
+                            ? (RuntimeException) e.getCause()
+                            : new IllegalStateException(e.getCause());
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void listPrefix(AmazonS3 s3, ListObjectsV2Request request, int index, PageHandler handler) {
+        logger.debug("Listing prefix: {}", request.getPrefix());
+        ListObjectsV2Result result;
+        do {
+            result = s3.listObjectsV2(request);
+            listedPages.incrementAndGet();
+            listedObjects.addAndGet(result.getObjectSummaries().size());
+            handler.handle(index, result.getObjectSummaries());
+            request.setContinuationToken(result.getNextContinuationToken());
+        } while (result.isTruncated());
+        logger.debug("Listing complete: {}", request.getPrefix());
+    }
+
+    public void logStatistics() {
+        logger.info("Listed {} objects in {} pages", listedObjects.get(), listedPages.get());
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    public interface PageHandler {
+        void handle(int index, List<S3ObjectSummary> summaries);
+    }
+}
@@ -0,0 +1,114 @@
+package lassie;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs units of tagging work concurrently. Every account has a bulkhead: no more than a fixed number of its units run
+ * at the same time, and the rest of them wait in a queue of that account instead of occupying a thread of the pool.
+ * An account that is slow or throttled therefore only holds up its own units, never the ones of other accounts.
+ */
+public class TaggingScheduler {
+    private static final Logger logger = LogManager.getLogger(TaggingScheduler.class);
+    private final ExecutorService executor;
+    private final int threadsPerAccount;
+    private final Map<String, Bulkhead> bulkheads = new HashMap<>();
+    private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+    private int pendingUnits;
+
+    /**
+     * @param threads           the number of units that run at the same time, in total
+     * @param threadsPerAccount the number of units of one account that run at the same time
+     */
+    public TaggingScheduler(int threads, int threadsPerAccount) {
+        if (threads < 1 || threadsPerAccount < 1) {
+            throw new IllegalArgumentException("Tagging threads must be at least 1. Got: "
+                    + threads + " and " + threadsPerAccount + " per account");
+        }
+        this.threadsPerAccount = threadsPerAccount;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "tagger-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Runs the unit as soon as the bulkhead of the account has room for it.
+     */
+    public synchronized void submit(String account, Runnable unit) {
+        pendingUnits++;
+        Bulkhead bulkhead = bulkheads.computeIfAbsent(account, key -> new Bulkhead());
+        if (bulkhead.running < threadsPerAccount) {
+            bulkhead.running++;
+            execute(account, unit);
+        } else {
+            bulkhead.waiting.add(unit);
+        }
+    }
+
+    /**
+     * Waits until all submitted units have finished.
+     *
+     * @throws RuntimeException the first failure of any unit, after all units have finished
+     */
+    public synchronized void awaitCompletion() {
+        while (pendingUnits > 0) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the taggers", e);
+            }
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void execute(String account, Runnable unit) {
+        executor.execute(() -> {
+            try {
+                unit.run();
+            } catch (RuntimeException e) {
+                logger.error("Tagging failed for account {}: ", account, e);
+                failure.compareAndSet(null, e);
+            } finally {
+                completed(account);
+            }
+        });
+    }
+
+    private synchronized void completed(String account) {
+        Bulkhead bulkhead = bulkheads.get(account);
+        Runnable next = bulkhead.waiting.poll();
+        if (next != null) {
+            execute(account, next);
+        } else {
+            bulkhead.running--;
+        }
+        pendingUnits--;
+        if (pendingUnits == 0) {
+            notifyAll();
+        }
+    }
+
+    private static class Bulkhead {
+        private final Queue<Runnable> waiting = new ArrayDeque<>();
+        private int running;
+    }
+}
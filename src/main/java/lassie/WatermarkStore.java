@@ -0,0 +1,85 @@
+package lassie;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Remembers, per account and region, the key of the last CloudTrail object that has been processed. New watermarks
+ * are only kept in memory until {@link #commit()} is called at the end of a successful run, so a run that fails
+ * leaves the stored watermarks untouched and the next run picks up the same objects again.
+ */
+public class WatermarkStore {
+    private static final Logger logger = LogManager.getLogger(WatermarkStore.class);
+    private final Path file;
+    private final Properties committed = new Properties();
+    private final Properties pending = new Properties();
+
+    public WatermarkStore(String file) {
+        this.file = Paths.get(file);
+        if (Files.isRegularFile(this.file)) {
+            try (InputStream inputStream = Files.newInputStream(this.file)) {
+                committed.load(inputStream);
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not read watermarks: " + file, e);
+            }
+        }
+        logger.info("Watermarks loaded: {}", committed.size());
+    }
+
+    /**
+     * @return the key of the last processed object, or null if nothing has been processed yet
+     */
+    public String get(String accountId, String region) {
+        return committed.getProperty(name(accountId, region));
+    }
+
+    /**
+     * Sets the watermark that will be stored when the run is committed.
+     */
+    public synchronized void advance(String accountId, String region, String key) {
+        logger.debug("Watermark for {} in {}: {}", accountId, region, key);
+        pending.setProperty(name(accountId, region), key);
+    }
+
+    /**
+     * Stores the watermarks of the current run. The file is replaced atomically, so it is never left half written.
+     */
+    public synchronized void commit() {
+        if (pending.isEmpty()) {
+            logger.info("No new watermarks");
+            return;
+        }
+        Properties watermarks = new Properties();
+        watermarks.putAll(committed);
+        watermarks.putAll(pending);
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path tmpFile = Files.createTempFile(parent, null, ".tmp");
+            try (OutputStream outputStream = Files.newOutputStream(tmpFile)) {
+                watermarks.store(outputStream, "Last processed CloudTrail object per account and region");
+            }
+            Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.error("Could not store watermarks: ", e);
+            e.printStackTrace();
+            return;
+        }
+        committed.putAll(pending);
+        pending.clear();
+        logger.info("Watermarks committed: {}", file);
+    }
+
+    private String name(String accountId, String region) {
+        return accountId + "." + region;
+    }
+}
@@ -0,0 +1,42 @@
+package lassie.awshandlers;
+
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.handlers.AsyncHandler;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.function.BiFunction;
+
+/**
+ * Turns the requests of the SDK's async clients, which return plain futures, into completable futures that are
+ * completed from the SDK's callback. The calling thread does not wait for the response, but the async clients of
+ * this SDK send each request as a blocking call on a thread of their executor. That thread is held for the whole
+ * request, including the backoff between its retries, so the executor size caps the requests in flight.
+ */
+public final class AsyncRequests {
+
+    private AsyncRequests() {
+    }
+
+    /**
+     * @param call    the async method of the client that takes a callback, such as
+     *                {@code rds::listTagsForResourceAsync}
+     * @param request the request to send
+     */
+    public static <Q extends AmazonWebServiceRequest, R> CompletableFuture<R> send(
+            BiFunction<Q, AsyncHandler<Q, R>, Future<R>> call, Q request) {
+        CompletableFuture<R> future = new CompletableFuture<>();
+        call.apply(request, new AsyncHandler<Q, R>() {
+            @Override
+            public void onError(Exception exception) {
+                future.completeExceptionally(exception);
+            }
+
+            @Override
+            public void onSuccess(Q request, R result) {
+                future.complete(result);
+            }
+        });
+        return future;
+    }
+}
@@ -0,0 +1,84 @@
+package lassie.awshandlers;
+
+import lassie.config.Account;
+
+/**
+ * Creates handlers that are bound to one account and region for their whole life. The handlers don't change after
+ * they have been created, and the clients and caches they share are thread-safe, so every concurrent unit
+ * of work can have handlers of its own. The handlers of every service share a rate limiter per account, service
+ * and region. EC2 and RDS, whose requests are the first to be throttled, get the highest rates because their
+ * taggers send the most requests.
+ */
+public class AwsHandlerFactory implements HandlerFactory {
+    private static final double EC2_REQUESTS_PER_SECOND = 20;
+    private static final int EC2_BURST = 100;
+    private static final double RDS_REQUESTS_PER_SECOND = 10;
+    private static final int RDS_BURST = 20;
+    private static final double ELB_REQUESTS_PER_SECOND = 10;
+    private static final int ELB_BURST = 20;
+    private static final double EMR_REQUESTS_PER_SECOND = 5;
+    private static final int EMR_BURST = 10;
+    private static final double REDSHIFT_REQUESTS_PER_SECOND = 5;
+    private static final int REDSHIFT_BURST = 10;
+    private static final double S3_REQUESTS_PER_SECOND = 20;
+    private static final int S3_BURST = 50;
+    private final ClientRegistry clients;
+    private final S3BucketCache s3BucketCache;
+    private final RateLimiters rateLimiters;
+    private final int ec2PageSize;
+
+    public AwsHandlerFactory(ClientRegistry clients, S3BucketCache s3BucketCache, RateLimiters rateLimiters,
+                             int ec2PageSize) {
+        this.clients = clients;
+        this.s3BucketCache = s3BucketCache;
+        this.rateLimiters = rateLimiters;
+        this.ec2PageSize = ec2PageSize;
+    }
+
+    @Override
+    public Ec2Handler createEc2Handler(Account account, String region) {
+        return new EC2HandlerImpl(
+                clients.ec2(account.getAccessKeyId(), account.getSecretAccessKey(), region),
+                rateLimiters.get(account.getAccessKeyId(), "ec2", region, EC2_REQUESTS_PER_SECOND, EC2_BURST),
+                ec2PageSize);
+    }
+
+    @Override
+    public EMRHandler createEMRHandler(Account account, String region) {
+        return new EMRHandlerImpl(
+                clients.emr(account.getAccessKeyId(), account.getSecretAccessKey(), region),
+                rateLimiters.get(account.getAccessKeyId(), "emr", region, EMR_REQUESTS_PER_SECOND, EMR_BURST));
+    }
+
+    @Override
+    public RedshiftHandler createRedshiftHandler(Account account, String region) {
+        return new RedshiftHandlerImpl(
+                clients.redshift(account.getAccessKeyId(), account.getSecretAccessKey(), region),
+                rateLimiters.get(account.getAccessKeyId(), "redshift", region,
+                        REDSHIFT_REQUESTS_PER_SECOND, REDSHIFT_BURST),
+                account.getAccountId(), region);
+    }
+
+    @Override
+    public ELBHandler createELBHandler(Account account, String region) {
+        return new ELBHandlerImpl(
+                clients.elb(account.getAccessKeyId(), account.getSecretAccessKey(), region),
+                rateLimiters.get(account.getAccessKeyId(), "elb", region, ELB_REQUESTS_PER_SECOND, ELB_BURST));
+    }
+
+    @Override
+    public S3Handler createS3Handler(Account account, String region) {
+        return new S3HandlerImpl(
+                bucketRegion -> clients.s3(account.getAccessKeyId(), account.getSecretAccessKey(), bucketRegion),
+                bucketRegion -> rateLimiters.get(account.getAccessKeyId(), "s3", bucketRegion,
+                        S3_REQUESTS_PER_SECOND, S3_BURST),
+                s3BucketCache, account.getAccessKeyId(), region);
+    }
+
+    @Override
+    public RDSHandler createRDSHandler(Account account, String region) {
+        return new RDSHandlerImpl(
+                clients.rds(account.getAccessKeyId(), account.getSecretAccessKey(), region),
+                rateLimiters.get(account.getAccessKeyId(), "rds", region, RDS_REQUESTS_PER_SECOND, RDS_BURST));
+    }
+}
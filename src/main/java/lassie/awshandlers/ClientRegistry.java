@@ -0,0 +1,131 @@
+package lassie.awshandlers;
+
+import com.amazonaws.AmazonWebServiceClient;
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.services.ec2.AmazonEC2;
+import com.amazonaws.services.ec2.AmazonEC2ClientBuilder;
+import com.amazonaws.services.elasticloadbalancingv2.AmazonElasticLoadBalancing;
+import com.amazonaws.services.elasticloadbalancingv2.AmazonElasticLoadBalancingClientBuilder;
+import com.amazonaws.services.elasticmapreduce.AmazonElasticMapReduce;
+import com.amazonaws.services.elasticmapreduce.AmazonElasticMapReduceClientBuilder;
+import com.amazonaws.services.rds.AmazonRDSAsync;
+import com.amazonaws.services.rds.AmazonRDSAsyncClientBuilder;
+import com.amazonaws.services.redshift.AmazonRedshift;
+import com.amazonaws.services.redshift.AmazonRedshiftClientBuilder;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+/**
+ * Hands out one client per credentials, service and region for the whole run. The SDK clients are thread-safe and
+ * each of them holds its own connection pool, so reusing them saves a new pool and new TLS handshakes every time a
+ * tagger or the log fetcher switches to a region it has already been in. Async clients all run their requests on
+ * one shared pool, instead of a pool of their own per client. Each request holds a thread of the pool until it
+ * completes, so the pool size is the number of async requests in flight over all accounts and regions.
+ */
+public class ClientRegistry {
+    private static final Logger logger = LogManager.getLogger(ClientRegistry.class);
+    private final Map<String, Object> clients = new ConcurrentHashMap<>();
+    private final ExecutorService asyncExecutor;
+
+    /**
+     * @param asyncThreads the number of threads that send the requests of all async clients, which should allow a
+     *                     few requests in flight per concurrent tagging unit
+     */
+    public ClientRegistry(int asyncThreads) {
+        if (asyncThreads < 1) {
+            throw new IllegalArgumentException("Async threads must be at least 1. Got: " + asyncThreads);
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        this.asyncExecutor = Executors.newFixedThreadPool(asyncThreads, runnable -> {
+            Thread thread = new Thread(runnable, "aws-async-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public AmazonEC2 ec2(String accessKeyId, String secretAccessKey, String region) {
+        return get(AmazonEC2.class, accessKeyId, secretAccessKey, region, (credentials, clientRegion) ->
+                AmazonEC2ClientBuilder.standard()
+                        .withCredentials(credentials)
+                        .withRegion(clientRegion)
+                        .build());
+    }
+
+    public AmazonS3 s3(String accessKeyId, String secretAccessKey, String region) {
+        return get(AmazonS3.class, accessKeyId, secretAccessKey, region, (credentials, clientRegion) ->
+                AmazonS3ClientBuilder.standard()
+                        .withCredentials(credentials)
+                        .withRegion(clientRegion)
+                        .build());
+    }
+
+    public AmazonRDSAsync rds(String accessKeyId, String secretAccessKey, String region) {
+        return get(AmazonRDSAsync.class, accessKeyId, secretAccessKey, region, (credentials, clientRegion) ->
+                AmazonRDSAsyncClientBuilder.standard()
+                        .withCredentials(credentials)
+                        .withRegion(clientRegion)
+                        .withExecutorFactory(() -> asyncExecutor)
+                        .build());
+    }
+
+    public AmazonElasticMapReduce emr(String accessKeyId, String secretAccessKey, String region) {
+        return get(AmazonElasticMapReduce.class, accessKeyId, secretAccessKey, region, (credentials, clientRegion) ->
+                AmazonElasticMapReduceClientBuilder.standard()
+                        .withCredentials(credentials)
+                        .withRegion(clientRegion)
+                        .build());
+    }
+
+    public AmazonElasticLoadBalancing elb(String accessKeyId, String secretAccessKey, String region) {
+        return get(AmazonElasticLoadBalancing.class, accessKeyId, secretAccessKey, region,
+                (credentials, clientRegion) -> AmazonElasticLoadBalancingClientBuilder.standard()
+                        .withCredentials(credentials)
+                        .withRegion(clientRegion)
+                        .build());
+    }
+
+    public AmazonRedshift redshift(String accessKeyId, String secretAccessKey, String region) {
+        return get(AmazonRedshift.class, accessKeyId, secretAccessKey, region, (credentials, clientRegion) ->
+                AmazonRedshiftClientBuilder.standard()
+                        .withCredentials(credentials)
+                        .withRegion(clientRegion)
+                        .build());
+    }
+
+    /**
+     * Shuts down every client and releases its connections, as well as the threads of the async clients.
+     */
+    public void shutdown() {
+        logger.info("Shutting down {} clients", clients.size());
+        clients.values().forEach(client -> {
+            if (client instanceof AmazonWebServiceClient) {
+                ((AmazonWebServiceClient) client).shutdown();
+            }
+        });
+        clients.clear();
+        asyncExecutor.shutdownNow();
+    }
+
+    private <T> T get(Class<T> service, String accessKeyId, String secretAccessKey, String region,
+                      BiFunction<AWSCredentialsProvider, String, T> builder) {
+        String key = accessKeyId + "/" + service.getSimpleName() + "/" + region;
+        return service.cast(clients.computeIfAbsent(key, ignored -> {
+            AWSCredentialsProvider credentials =
+                    new AWSStaticCredentialsProvider(new BasicAWSCredentials(accessKeyId, secretAccessKey));
+            T client = builder.apply(credentials, region);
+            logger.info("{} client instantiated for region: {}", service.getSimpleName(), region);
+            return client;
+        }));
+    }
+}
@@ -1,31 +1,43 @@
 package lassie.awshandlers;
 
-import com.amazonaws.auth.AWSStaticCredentialsProvider;
-import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.ec2.AmazonEC2;
-import com.amazonaws.services.ec2.AmazonEC2ClientBuilder;
 import com.amazonaws.services.ec2.model.*;
+import lassie.model.VolumeIndex;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.function.Function;
+import java.util.stream.StreamSupport;
 
 import static lassie.Application.DRY_RUN;
 
 public class EC2HandlerImpl implements Ec2Handler {
     private static final Logger logger = LogManager.getLogger(EC2HandlerImpl.class);
-    private AmazonEC2 ec2;
-
-    public void instantiateEC2Client(String accessKeyId, String secretAccessKey, String region) {
-        logger.info("Instantiating EC2 client in region: {}", region);
-        BasicAWSCredentials basicCredentials = new BasicAWSCredentials(accessKeyId, secretAccessKey);
-        AWSStaticCredentialsProvider awsCredentials = new AWSStaticCredentialsProvider(basicCredentials);
-        this.ec2 = AmazonEC2ClientBuilder.standard()
-                .withCredentials(awsCredentials)
-                .withRegion(region)
-                .build();
-        logger.info("EC2 client instantiated");
+    private static final int MAX_RESOURCES_PER_TAG_REQUEST = 1000;
+    private static final int MAX_VOLUMES_PER_PAGE = 500;
+    private static final int MAX_FILTER_VALUES = 200;
+    private final int maxResults;
+    private final AmazonEC2 ec2;
+    private final RateLimiter rateLimiter;
+
+    /**
+     * @param ec2         the client of the region the handler works in
+     * @param rateLimiter limits the requests to EC2 in the region
+     * @param maxResults  the number of resources requested per page of a describe call, between 5 and 1000.
+     *                    Volumes are requested at most {@value MAX_VOLUMES_PER_PAGE} at a time
+     */
+    public EC2HandlerImpl(AmazonEC2 ec2, RateLimiter rateLimiter, int maxResults) {
+        if (maxResults < 5 || maxResults > 1000) {
+            throw new IllegalArgumentException("Max results must be between 5 and 1000. Got: " + maxResults);
+        }
+        this.ec2 = ec2;
+        this.rateLimiter = rateLimiter;
+        this.maxResults = maxResults;
     }
 
     public void tagResource(String id, String key, String value) {
@@ -36,81 +48,91 @@ public class EC2HandlerImpl implements Ec2Handler {
         CreateTagsRequest tagsRequest = new CreateTagsRequest()
                 .withResources(id)
                 .withTags(new Tag(key, value));
-        ec2.createTags(tagsRequest);
+        rateLimiter.call(() -> ec2.createTags(tagsRequest));
         logger.info("Tagged: {} with key: {} value: {}", id, key, value);
     }
 
-    public String getTagValueForInstanceWithId(String tagKey, String instanceId) {
-        List<Instance> instances = getInstances();
-        if (instances.stream().noneMatch(instance -> instance.getInstanceId().equals(instanceId))) {
-            throw new IllegalArgumentException("Instance with id " + instanceId + " not found");
-        }
-
-        Instance instance = filterInstanceByID(instances, instanceId);
-        if (instance == null) {
-            throw new IllegalArgumentException("Instance with id " + instanceId + " not found");
+    /**
+     * Tags the resources with as few CreateTags requests as possible, since a single request accepts many resource
+     * ids as long as they get the same tag. A request fails as a whole when one of its ids is invalid, in which case
+     * its ids are tagged one at a time so that a single bad id doesn't keep the others from being tagged.
+     */
+    public void tagResources(List<String> ids, String key, String value) {
+        if (DRY_RUN) {
+            logger.info("Dry run: {}. Did not tag: {} with {}: {}", DRY_RUN, ids, key, value);
+            return;
         }
-
-        for (Tag t : instance.getTags()) {
-            if (t.getKey().equals(tagKey)) {
-                return t.getValue();
+        for (int from = 0; from < ids.size(); from += MAX_RESOURCES_PER_TAG_REQUEST) {
+            List<String> batch = ids.subList(from, Math.min(from + MAX_RESOURCES_PER_TAG_REQUEST, ids.size()));
+            try {
+                rateLimiter.call(() -> ec2.createTags(new CreateTagsRequest()
+                        .withResources(batch)
+                        .withTags(new Tag(key, value))));
+                logger.info("Tagged: {} with key: {} value: {}", batch, key, value);
+            } catch (AmazonServiceException e) {
+                if (!isInvalidResourceError(e) || batch.size() == 1) {
+                    throw e;
+                }
+                logger.warn("Could not tag {} resources in one request: {}. Tagging them one at a time",
+                        batch.size(), e.getErrorCode());
+                tagOneAtATime(batch, key, value);
             }
         }
-        throw new IllegalArgumentException("Instance: " + instanceId + " does not have a tag with key " + tagKey);
     }
 
-    private Instance filterInstanceByID(List<Instance> instances, String instanceId) {
-        Instance instance = null;
-        for (Instance i : instances) {
-            if (i.getInstanceId().equals(instanceId)) {
-                instance = i;
+    private void tagOneAtATime(List<String> ids, String key, String value) {
+        for (String id : ids) {
+            try {
+                tagResource(id, key, value);
+            } catch (AmazonServiceException e) {
+                if (!isInvalidResourceError(e)) {
+                    throw e;
+                }
+                logger.error("Could not tag: {}. {}", id, e.getErrorMessage());
             }
         }
-        return instance;
     }
 
-    public List<String> getIdsForInstancesWithoutTag(String tag) {
-        logger.info("Getting instances without tags");
+    private boolean isInvalidResourceError(AmazonServiceException e) {
+        return e.getErrorType() == AmazonServiceException.ErrorType.Client
+                && e.getErrorCode() != null
+                && (e.getErrorCode().startsWith("Invalid") || e.getErrorCode().endsWith("NotFound"));
+    }
 
-        List<String> untaggedInstanceIds = new ArrayList<>();
-        List<Instance> instances = getInstances();
+    public List<String> getIdsForInstancesWithoutTag(String tag, Collection<String> instanceIds) {
+        logger.info("Getting instances without tags. Describing {} instances", instanceIds.size());
 
+        List<String> untaggedInstanceIds = new ArrayList<>();
+        Iterable<Instance> instances = describeInChunks("instance-id", instanceIds, this::getInstances);
         for (Instance instance : instances) {
             if (instance.getTags().stream().noneMatch(t -> t.getKey().equals(tag))) {
                 untaggedInstanceIds.add(instance.getInstanceId());
             }
         }
 
-
         logger.info("Found {} instances without: {}", untaggedInstanceIds.size(), tag);
         untaggedInstanceIds.forEach(logger::info);
         return untaggedInstanceIds;
     }
 
-    private List<Instance> getInstances() {
-        List<Instance> instances = new ArrayList<>();
-        boolean done = false;
-        while (!done) {
-            DescribeInstancesRequest request = new DescribeInstancesRequest();
-            DescribeInstancesResult response = ec2.describeInstances(request);
-
-            List<Reservation> reservations = response.getReservations();
-            reservations.forEach(reservation -> instances.addAll(reservation.getInstances()));
-
-            request.setNextToken(response.getNextToken());
-            if (response.getNextToken() == null) {
-                done = true;
-            }
-        }
-        return instances;
+    private Iterable<Instance> getInstances(Filter filter) {
+        return new Paginator<>(nextToken -> {
+            DescribeInstancesRequest request = new DescribeInstancesRequest()
+                    .withFilters(filter)
+                    .withMaxResults(maxResults)
+                    .withNextToken(nextToken);
+            DescribeInstancesResult response = rateLimiter.call(() -> ec2.describeInstances(request));
+            List<Instance> instances = new ArrayList<>();
+            response.getReservations().forEach(reservation -> instances.addAll(reservation.getInstances()));
+            return new Paginator.Page<>(instances, response.getNextToken());
+        });
     }
 
-    public List<String> getIdsForSecurityGroupsWithoutTag(String tag) {
-        logger.info("Describing Security groups");
+    public List<String> getIdsForSecurityGroupsWithoutTag(String tag, Collection<String> groupIds) {
+        logger.info("Describing {} Security groups", groupIds.size());
         List<String> untaggedSecurityGroupIds = new ArrayList<>();
-        DescribeSecurityGroupsRequest request = new DescribeSecurityGroupsRequest();
-        DescribeSecurityGroupsResult response = ec2.describeSecurityGroups(request);
-        for (SecurityGroup securityGroup : response.getSecurityGroups()) {
+        Iterable<SecurityGroup> securityGroups = describeInChunks("group-id", groupIds, this::getSecurityGroups);
+        for (SecurityGroup securityGroup : securityGroups) {
             if (securityGroup.getTags().stream().noneMatch(t -> t.getKey().equals(tag))) {
                 untaggedSecurityGroupIds.add(securityGroup.getGroupId());
             }
@@ -120,57 +142,71 @@ public class EC2HandlerImpl implements Ec2Handler {
         return untaggedSecurityGroupIds;
     }
 
-    public List<String> getIdsForVolumesWithoutTag(String tag) {
-        logger.info("Describing volumes");
-        List<String> untaggedVolumesIds = new ArrayList<>();
-        boolean done = false;
-        while (!done) {
-            DescribeVolumesRequest request = new DescribeVolumesRequest();
-            DescribeVolumesResult result = ec2.describeVolumes(request);
-            for (Volume volume : result.getVolumes()) {
-                if (volume.getTags().stream().noneMatch(t -> t.getKey().equals(tag))) {
-                    untaggedVolumesIds.add(volume.getVolumeId());
-                }
-            }
-            request.setNextToken(result.getNextToken());
-            if (result.getNextToken() == null) {
-                done = true;
-            }
-        }
-        logger.info("Found {} EBS volumes without: {}", untaggedVolumesIds.size(), tag);
-        untaggedVolumesIds.forEach(logger::info);
-        return untaggedVolumesIds;
+    /**
+     * DescribeSecurityGroups is not paginated in this version of the SDK, so all groups come in a single page.
+     */
+    private Iterable<SecurityGroup> getSecurityGroups(Filter filter) {
+        return new Paginator<>(nextToken -> {
+            DescribeSecurityGroupsRequest request = new DescribeSecurityGroupsRequest()
+                    .withFilters(filter);
+            DescribeSecurityGroupsResult response = rateLimiter.call(() -> ec2.describeSecurityGroups(request));
+            return new Paginator.Page<>(response.getSecurityGroups(), null);
+        });
     }
 
-    public boolean volumeIsAttachedToInstance(String volumeId) {
-        Volume volume = getVolumeWithId(volumeId);
-        return volume.getAttachments().size() > 0;
-
+    /**
+     * Indexes the untagged volumes of the region with a single paginated describe, and then describes only the
+     * instances those volumes are attached to, to find their owners.
+     */
+    public VolumeIndex getVolumeIndex(String tag) {
+        logger.info("Indexing volumes");
+        VolumeIndex volumeIndex = new VolumeIndex();
+        for (Volume volume : getVolumes()) {
+            if (volume.getTags().stream().noneMatch(t -> t.getKey().equals(tag))) {
+                String instanceId = volume.getAttachments().isEmpty()
+                        ? null
+                        : volume.getAttachments().get(0).getInstanceId();
+                volumeIndex.addUntaggedVolume(volume.getVolumeId(), instanceId);
+            }
+        }
+        for (Instance instance : describeInChunks("instance-id", volumeIndex.getAttachedInstanceIds(),
+                this::getInstances)) {
+            instance.getTags().stream()
+                    .filter(t -> t.getKey().equals(tag))
+                    .findFirst()
+                    .ifPresent(t -> volumeIndex.addInstanceOwner(instance.getInstanceId(), t.getValue()));
+        }
+        logger.info("Found {} EBS volumes without: {}", volumeIndex.getUntaggedVolumeIds().size(), tag);
+        volumeIndex.getUntaggedVolumeIds().forEach(logger::info);
+        return volumeIndex;
     }
 
-    public String getIdForInstanceVolumeIsAttachedTo(String volumeId) {
-        Volume volume = getVolumeWithId(volumeId);
-        return volume.getAttachments().get(0).getInstanceId();
+    private Iterable<Volume> getVolumes() {
+        return new Paginator<>(nextToken -> {
+            DescribeVolumesRequest request = new DescribeVolumesRequest()
+                    .withMaxResults(Math.min(maxResults, MAX_VOLUMES_PER_PAGE))
+                    .withNextToken(nextToken);
+            DescribeVolumesResult result = rateLimiter.call(() -> ec2.describeVolumes(request));
+            return new Paginator.Page<>(result.getVolumes(), result.getNextToken());
+        });
     }
 
-    private Volume getVolumeWithId(String volumeId) {
-        boolean done = false;
-        while (!done) {
-            DescribeVolumesRequest request = new DescribeVolumesRequest();
-            DescribeVolumesResult result = ec2.describeVolumes(request);
-
-            List<Volume> volumes = result.getVolumes();
-            for (Volume volume : volumes) {
-                if (volume.getVolumeId().equals(volumeId)) {
-                    return volume;
-                }
-            }
-            request.setNextToken(result.getNextToken());
-            if (result.getNextToken() == null) {
-                done = true;
-            }
+    /**
+     * Describes only the resources with the given ids, using a filter rather than the id parameter of the describe
+     * call, so ids of resources that no longer exist are left out instead of failing the request. The ids are split
+     * into chunks of {@value MAX_FILTER_VALUES}, the largest number of values a filter accepts, and the chunks are
+     * described one after another as the result is iterated.
+     */
+    private <T> Iterable<T> describeInChunks(String filterName, Collection<String> ids,
+                                             Function<Filter, Iterable<T>> describe) {
+        List<String> distinctIds = new ArrayList<>(new LinkedHashSet<>(ids));
+        List<Filter> filters = new ArrayList<>();
+        for (int from = 0; from < distinctIds.size(); from += MAX_FILTER_VALUES) {
+            int to = Math.min(from + MAX_FILTER_VALUES, distinctIds.size());
+            filters.add(new Filter(filterName, new ArrayList<>(distinctIds.subList(from, to))));
         }
-        throw new IllegalArgumentException("Volume with id " + volumeId + " not found");
+        return () -> filters.stream()
+                .flatMap(filter -> StreamSupport.stream(describe.apply(filter).spliterator(), false))
+                .iterator();
     }
 }
-
@@ -1,9 +1,6 @@
 package lassie.awshandlers;
 
-import com.amazonaws.auth.AWSStaticCredentialsProvider;
-import com.amazonaws.auth.BasicAWSCredentials;
 import com.amazonaws.services.elasticloadbalancingv2.AmazonElasticLoadBalancing;
-import com.amazonaws.services.elasticloadbalancingv2.AmazonElasticLoadBalancingClientBuilder;
 import com.amazonaws.services.elasticloadbalancingv2.model.*;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -15,17 +12,14 @@ import static lassie.Application.DRY_RUN;
 
 public class ELBHandlerImpl implements ELBHandler {
     private static final Logger logger = LogManager.getLogger(ELBHandlerImpl.class);
-    private AmazonElasticLoadBalancing elb;
+    private static final int MAX_ARNS_PER_REQUEST = 20;
+    private static final int MAX_LOAD_BALANCERS_PER_PAGE = 400;
+    private final AmazonElasticLoadBalancing elb;
+    private final RateLimiter rateLimiter;
 
-    public void instantiateELBClient(String accessKeyId, String secretAccessKey, String region) {
-        logger.info("Instantiating ELB client in region: {}", region);
-        BasicAWSCredentials awsCreds = new BasicAWSCredentials(accessKeyId, secretAccessKey);
-        AWSStaticCredentialsProvider awsCredentials = new AWSStaticCredentialsProvider(awsCreds);
-        this.elb = AmazonElasticLoadBalancingClientBuilder.standard()
-                .withCredentials(awsCredentials)
-                .withRegion(region)
-                .build();
-        logger.info("ELB client instantiated");
+    public ELBHandlerImpl(AmazonElasticLoadBalancing elb, RateLimiter rateLimiter) {
+        this.elb = elb;
+        this.rateLimiter = rateLimiter;
     }
 
     public void tagResource(String id, String key, String value) {
@@ -39,21 +33,52 @@ public class ELBHandlerImpl implements ELBHandler {
         AddTagsRequest tagsRequest = new AddTagsRequest()
                 .withResourceArns(id)
                 .withTags(tag);
-        elb.addTags(tagsRequest);
+        rateLimiter.call(() -> elb.addTags(tagsRequest));
         logger.info("Tagged: {} with key: {} value: {}", id, key, value);
     }
 
+    /**
+     * Tags the load balancers with one AddTags request per {@value MAX_ARNS_PER_REQUEST} ARNs. A request fails as a
+     * whole when one of its load balancers no longer exists, in which case its ARNs are tagged one at a time.
+     */
+    public void tagResources(List<String> ids, String key, String value) {
+        if (DRY_RUN) {
+            logger.info("Dry run: {}. Did not tag: {} with {}: {}", DRY_RUN, ids, key, value);
+            return;
+        }
+        for (List<String> batch : partition(ids)) {
+            try {
+                rateLimiter.call(() -> elb.addTags(new AddTagsRequest()
+                        .withResourceArns(batch)
+                        .withTags(new Tag().withKey(key).withValue(value))));
+                logger.info("Tagged: {} with key: {} value: {}", batch, key, value);
+            } catch (LoadBalancerNotFoundException e) {
+                if (batch.size() == 1) {
+                    throw e;
+                }
+                logger.warn("Could not tag {} load balancers in one request: {}. Tagging them one at a time",
+                        batch.size(), e.getErrorMessage());
+                for (String id : batch) {
+                    try {
+                        tagResource(id, key, value);
+                    } catch (LoadBalancerNotFoundException notFound) {
+                        logger.error("Could not tag: {}. {}", id, notFound.getErrorMessage());
+                    }
+                }
+            }
+        }
+    }
+
     public List<String> getIdsForLoadBalancersWithoutTag(String tag) {
         logger.info("Describing Load Balancers");
         List<String> untaggedLoadBalancerIds = new ArrayList<>();
-        DescribeLoadBalancersResult result = elb.describeLoadBalancers(new DescribeLoadBalancersRequest());
-        for (LoadBalancer loadBalancer : result.getLoadBalancers()) {
+        for (List<String> batch : partition(getLoadBalancerArns())) {
             DescribeTagsRequest tagsRequest = new DescribeTagsRequest()
-                    .withResourceArns(loadBalancer.getLoadBalancerArn());
-            DescribeTagsResult tagsResult = elb.describeTags(tagsRequest);
+                    .withResourceArns(batch);
+            DescribeTagsResult tagsResult = rateLimiter.call(() -> elb.describeTags(tagsRequest));
             for (TagDescription tagDescription : tagsResult.getTagDescriptions()) {
                 if (!hasTag(tagDescription, tag)) {
-                    untaggedLoadBalancerIds.add(loadBalancer.getLoadBalancerArn());
+                    untaggedLoadBalancerIds.add(tagDescription.getResourceArn());
                 }
             }
         }
@@ -62,6 +87,29 @@ public class ELBHandlerImpl implements ELBHandler {
         return untaggedLoadBalancerIds;
     }
 
+    private List<String> getLoadBalancerArns() {
+        List<String> loadBalancerArns = new ArrayList<>();
+        DescribeLoadBalancersRequest request = new DescribeLoadBalancersRequest()
+                .withPageSize(MAX_LOAD_BALANCERS_PER_PAGE);
+        do {
+            DescribeLoadBalancersResult result = rateLimiter.call(() -> elb.describeLoadBalancers(request));
+            result.getLoadBalancers().forEach(loadBalancer -> loadBalancerArns.add(loadBalancer.getLoadBalancerArn()));
+            request.setMarker(result.getNextMarker());
+        } while (request.getMarker() != null);
+        return loadBalancerArns;
+    }
+
+    /**
+     * Splits the ARNs into batches of the largest size DescribeTags and AddTags accept.
+     */
+    private List<List<String>> partition(List<String> arns) {
+        List<List<String>> batches = new ArrayList<>();
+        for (int from = 0; from < arns.size(); from += MAX_ARNS_PER_REQUEST) {
+            batches.add(arns.subList(from, Math.min(from + MAX_ARNS_PER_REQUEST, arns.size())));
+        }
+        return batches;
+    }
+
     private boolean hasTag(TagDescription tagDescription, String tag) {
         logger.debug(tag + " found: " + tagDescription.getTags().stream().anyMatch(t -> t.getKey().equals(tag)));
         return tagDescription.getTags().stream().anyMatch(t -> t.getKey().equals(tag));
@@ -1,11 +1,10 @@
 package lassie.awshandlers;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface EMRHandler {
-    void instantiateEMRClient(String accessKeyId, String secretAccessKey, String region);
-
     void tagResource(String id, String key, String value);
 
-    List<String> getIdsForClustersWithoutTag(String tag);
+    List<String> getIdsForClustersWithoutTag(String tag, Collection<String> clusterIds);
 }
@@ -1,59 +1,66 @@
 package lassie.awshandlers;
 
-import com.amazonaws.auth.AWSCredentials;
-import com.amazonaws.auth.AWSStaticCredentialsProvider;
-import com.amazonaws.auth.BasicAWSCredentials;
 import com.amazonaws.services.elasticmapreduce.AmazonElasticMapReduce;
-import com.amazonaws.services.elasticmapreduce.AmazonElasticMapReduceClientBuilder;
 import com.amazonaws.services.elasticmapreduce.model.*;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 import static lassie.Application.DRY_RUN;
 
 public class EMRHandlerImpl implements EMRHandler {
     private final static Logger logger = LogManager.getLogger(EMRHandlerImpl.class);
-    private AmazonElasticMapReduce emr;
+    private static final List<String> ACTIVE_STATES = Arrays.asList(ClusterState.STARTING.toString(),
+            ClusterState.BOOTSTRAPPING.toString(), ClusterState.RUNNING.toString(), ClusterState.WAITING.toString());
+    private final AmazonElasticMapReduce emr;
+    private final RateLimiter rateLimiter;
 
-    public void instantiateEMRClient(String accessKeyId, String secretAccessKey, String region) {
-        logger.info("Instantiating EMR client in region: {}", region);
-        AWSCredentials basicCredentials = new BasicAWSCredentials(accessKeyId, secretAccessKey);
-        AWSStaticCredentialsProvider awsCredentials = new AWSStaticCredentialsProvider(basicCredentials);
-        this.emr = AmazonElasticMapReduceClientBuilder.standard()
-                .withCredentials(awsCredentials)
-                .withRegion(region)
-                .build();
-        logger.info("EMR client instantiated");
+    public EMRHandlerImpl(AmazonElasticMapReduce emr, RateLimiter rateLimiter) {
+        this.emr = emr;
+        this.rateLimiter = rateLimiter;
     }
 
+    /**
+     * Adds the tag to the cluster. AddTags leaves the other tags of the cluster as they are, so there is no need to
+     * describe the cluster first.
+     */
     public void tagResource(String id, String key, String value) {
         if (DRY_RUN) {
             logger.info("Dry run: {}. Did not tag: {} with {}: {}", DRY_RUN, id, key, value);
             return;
         }
-        DescribeClusterRequest request = new DescribeClusterRequest().withClusterId(id);
-        DescribeClusterResult result = emr.describeCluster(request);
-        List<Tag> tags = result.getCluster().getTags();
-        tags.add(new Tag(key, value));
-        AddTagsRequest tagsRequest = new AddTagsRequest(id, tags);
-        emr.addTags(tagsRequest);
+        rateLimiter.call(() -> emr.addTags(new AddTagsRequest(id, Collections.singletonList(new Tag(key, value)))));
         logger.info("Tagged: {} with key: {} value: {}", id, key, value);
     }
 
-    public List<String> getIdsForClustersWithoutTag(String tag) {
+    /**
+     * Lists the active clusters, filtered by state on the server, and describes only those of the given clusters
+     * that are among them, since the tags of a cluster are only returned by DescribeCluster.
+     */
+    public List<String> getIdsForClustersWithoutTag(String tag, Collection<String> clusterIds) {
+        if (clusterIds.isEmpty()) {
+            return new ArrayList<>();
+        }
         logger.info("Describing EMR clusters");
+        Set<String> activeClusterIds = new HashSet<>();
+        getActiveClusters().forEach(cluster -> activeClusterIds.add(cluster.getId()));
         List<String> untaggedClusterIds = new ArrayList<>();
-        ListClustersResult listClustersResult = emr.listClusters();
-        for (ClusterSummary clusterSummary : listClustersResult.getClusters()) {
-            DescribeClusterRequest request = new DescribeClusterRequest().withClusterId(clusterSummary.getId());
-            DescribeClusterResult result = emr.describeCluster(request);
-            if (isClusterActive(result.getCluster())) {
-                if (!hasTag(result.getCluster(), tag)) {
-                    untaggedClusterIds.add(result.getCluster().getId());
-                }
+        for (String clusterId : new LinkedHashSet<>(clusterIds)) {
+            if (!activeClusterIds.contains(clusterId)) {
+                continue;
+            }
+            DescribeClusterRequest request = new DescribeClusterRequest().withClusterId(clusterId);
+            Cluster cluster = rateLimiter.call(() -> emr.describeCluster(request)).getCluster();
+            if (!hasTag(cluster, tag)) {
+                untaggedClusterIds.add(cluster.getId());
             }
         }
         logger.info("Found {} clusters without: {}", untaggedClusterIds.size(), tag);
@@ -61,16 +68,14 @@ public class EMRHandlerImpl implements EMRHandler {
         return untaggedClusterIds;
     }
 
-    private boolean isClusterActive(Cluster cluster) {
-        String clusterState = cluster.getStatus().getState();
-        if (clusterState.equals(ClusterState.TERMINATED.name())) {
-            return false;
-        } else if (clusterState.equals(ClusterState.TERMINATED_WITH_ERRORS.name())) {
-            return false;
-        } else if (clusterState.equals(ClusterState.TERMINATING.name())) {
-            return false;
-        }
-        return true;
+    private Iterable<ClusterSummary> getActiveClusters() {
+        return new Paginator<>(marker -> {
+            ListClustersRequest request = new ListClustersRequest()
+                    .withClusterStates(ACTIVE_STATES)
+                    .withMarker(marker);
+            ListClustersResult result = rateLimiter.call(() -> emr.listClusters(request));
+            return new Paginator.Page<>(result.getClusters(), result.getMarker());
+        });
     }
 
     private boolean hasTag(Cluster cluster, String tag) {
@@ -1,21 +1,18 @@
 package lassie.awshandlers;
 
+import lassie.model.VolumeIndex;
+
+import java.util.Collection;
 import java.util.List;
 
 public interface Ec2Handler {
-    void instantiateEC2Client(String accessKeyId, String secretAccessKey, String region);
-
     void tagResource(String id, String key, String value);
 
-    String getTagValueForInstanceWithId(String tagKey, String instanceId);
-
-    List<String> getIdsForInstancesWithoutTag(String tag);
-
-    List<String> getIdsForSecurityGroupsWithoutTag(String tag);
+    void tagResources(List<String> ids, String key, String value);
 
-    List<String> getIdsForVolumesWithoutTag(String tag);
+    List<String> getIdsForInstancesWithoutTag(String tag, Collection<String> instanceIds);
 
-    boolean volumeIsAttachedToInstance(String volumeId);
+    List<String> getIdsForSecurityGroupsWithoutTag(String tag, Collection<String> groupIds);
 
-    String getIdForInstanceVolumeIsAttachedTo(String volumeId);
+    VolumeIndex getVolumeIndex(String tag);
 }
@@ -0,0 +1,17 @@
+package lassie.awshandlers;
+
+import lassie.config.Account;
+
+public interface HandlerFactory {
+    Ec2Handler createEc2Handler(Account account, String region);
+
+    EMRHandler createEMRHandler(Account account, String region);
+
+    RedshiftHandler createRedshiftHandler(Account account, String region);
+
+    ELBHandler createELBHandler(Account account, String region);
+
+    S3Handler createS3Handler(Account account, String region);
+
+    RDSHandler createRDSHandler(Account account, String region);
+}
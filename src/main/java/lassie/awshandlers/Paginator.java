@@ -0,0 +1,65 @@
+package lassie.awshandlers;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates lazily over the items of a paginated describe call. A page is only requested once the items of the
+ * previous page have been consumed, and the next token of each page is passed on to the request for the next one.
+ * A caller that stops iterating early therefore never requests the remaining pages, and no more than one page is
+ * held in memory at a time.
+ */
+public class Paginator<T> implements Iterable<T> {
+    private final PageFetcher<T> pageFetcher;
+
+    public Paginator(PageFetcher<T> pageFetcher) {
+        this.pageFetcher = pageFetcher;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            private Iterator<T> items = Collections.emptyIterator();
+            private String nextToken;
+            private boolean lastPage;
+
+            @Override
+            public boolean hasNext() {
+                while (!items.hasNext() && !lastPage) {
+                    Page<T> page = pageFetcher.fetch(nextToken);
+                    items = page.items.iterator();
+                    nextToken = page.nextToken;
+                    lastPage = nextToken == null || nextToken.isEmpty();
+                }
+                return items.hasNext();
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return items.next();
+            }
+        };
+    }
+
+    public static class Page<T> {
+        private final List<T> items;
+        private final String nextToken;
+
+        public Page(List<T> items, String nextToken) {
+            this.items = items;
+            this.nextToken = nextToken;
+        }
+    }
+
+    public interface PageFetcher<T> {
+        /**
+         * @param nextToken the token returned with the previous page, or null for the first page
+         */
+        Page<T> fetch(String nextToken);
+    }
+}
@@ -1,31 +1,26 @@
 package lassie.awshandlers;
 
-import com.amazonaws.auth.AWSStaticCredentialsProvider;
-import com.amazonaws.auth.BasicAWSCredentials;
-import com.amazonaws.services.rds.AmazonRDS;
-import com.amazonaws.services.rds.AmazonRDSClientBuilder;
+import com.amazonaws.services.rds.AmazonRDSAsync;
 import com.amazonaws.services.rds.model.*;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 import static lassie.Application.DRY_RUN;
 
 public class RDSHandlerImpl implements RDSHandler {
     private static final Logger logger = LogManager.getLogger(RDSHandlerImpl.class);
-    private AmazonRDS rds;
+    private static final int MAX_RECORDS = 100;
+    private final AmazonRDSAsync rds;
+    private final RateLimiter rateLimiter;
 
-    public void instantiateRDSClient(String accessKeyId, String secretAccessKey, String region) {
-        logger.info("Instantiating RDS client in region: {}", region);
-        BasicAWSCredentials awsCreds = new BasicAWSCredentials(accessKeyId, secretAccessKey);
-        AWSStaticCredentialsProvider awsCredentials = new AWSStaticCredentialsProvider(awsCreds);
-        this.rds = AmazonRDSClientBuilder.standard()
-                .withCredentials(awsCredentials)
-                .withRegion(region)
-                .build();
-        logger.info("RDS client instantiated");
+    public RDSHandlerImpl(AmazonRDSAsync rds, RateLimiter rateLimiter) {
+        this.rds = rds;
+        this.rateLimiter = rateLimiter;
     }
 
     public void tagResource(String id, String key, String value) {
@@ -39,20 +34,29 @@ public class RDSHandlerImpl implements RDSHandler {
         AddTagsToResourceRequest tagsRequest = new AddTagsToResourceRequest()
                 .withResourceName(id)
                 .withTags(tag);
-        rds.addTagsToResource(tagsRequest);
+        rateLimiter.call(() -> rds.addTagsToResource(tagsRequest));
         logger.info("Tagged: {} with key: {} value: {}", id, key, value);
     }
 
+    /**
+     * Pages through the DB instances and lists the tags of each of them. DescribeDBInstances doesn't return tags,
+     * so there is one ListTagsForResource request per instance. These requests are sent asynchronously, no faster
+     * than the rate limit, so they are all in flight at once without a thread waiting for each of them.
+     */
     public List<String> getIdsForDBInstancesWithoutTag(String tag) {
         logger.info("Describing DB instances");
-        List<String> untaggedDbInstanceIds = new ArrayList<>();
-        DescribeDBInstancesResult describeDBInstancesResult = rds.describeDBInstances(new DescribeDBInstancesRequest());
-        for (DBInstance dbInstance : describeDBInstancesResult.getDBInstances()) {
+        List<String> dbInstanceArns = getDBInstanceArns();
+        List<CompletableFuture<Boolean>> hasTag = new ArrayList<>();
+        for (String dbInstanceArn : dbInstanceArns) {
             ListTagsForResourceRequest request = new ListTagsForResourceRequest()
-                    .withResourceName(dbInstance.getDBInstanceArn());
-            ListTagsForResourceResult response = rds.listTagsForResource(request);
-            if (!hasTag(response, tag)) {
-                untaggedDbInstanceIds.add(dbInstance.getDBInstanceArn());
+                    .withResourceName(dbInstanceArn);
+            hasTag.add(rateLimiter.callAsync(() -> listTagsAsync(request))
+                    .thenApply(response -> hasTag(response, tag)));
+        }
+        List<String> untaggedDbInstanceIds = new ArrayList<>();
+        for (int i = 0; i < dbInstanceArns.size(); i++) {
+            if (!getResult(hasTag.get(i))) {
+                untaggedDbInstanceIds.add(dbInstanceArns.get(i));
             }
         }
         logger.info("Found {} DB instances without {}", untaggedDbInstanceIds.size(), tag);
@@ -60,6 +64,36 @@ public class RDSHandlerImpl implements RDSHandler {
         return untaggedDbInstanceIds;
     }
 
+    private List<String> getDBInstanceArns() {
+        List<String> dbInstanceArns = new ArrayList<>();
+        DescribeDBInstancesRequest request = new DescribeDBInstancesRequest()
+                .withMaxRecords(MAX_RECORDS);
+        do {
+            DescribeDBInstancesResult result = rateLimiter.call(() -> rds.describeDBInstances(request));
+            result.getDBInstances().forEach(dbInstance -> dbInstanceArns.add(dbInstance.getDBInstanceArn()));
+            request.setMarker(result.getMarker());
+        } while (request.getMarker() != null);
+        return dbInstanceArns;
+    }
+
+    private CompletableFuture<ListTagsForResourceResult> listTagsAsync(ListTagsForResourceRequest request) {
+        return AsyncRequests.send(rds::listTagsForResourceAsync, request);
+    }
+
+    private boolean getResult(CompletableFuture<Boolean> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while listing tags", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
     private boolean hasTag(ListTagsForResourceResult response, String tag) {
         logger.debug(tag + " found: " + response.getTagList().stream().anyMatch(t -> t.getKey().equals(tag)));
         return response.getTagList().stream().anyMatch(t -> t.getKey().equals(tag));
@@ -0,0 +1,162 @@
+package lassie.awshandlers;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.retry.RetryUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Limits the requests to one service in one region of one account, whichever thread sends them. Permits come from a
+ * token bucket, so a burst of requests can go out at once after a quiet period. After that, requests start no
+ * faster than the current rate, in requests per second. The rate adapts to the service: it is halved every time a
+ * request is throttled and grows back a little with every request that succeeds. Throttled requests are retried
+ * after a random backoff that doubles with every attempt, so threads that were throttled together don't retry
+ * together.
+ */
+public class RateLimiter {
+    private static final Logger logger = LogManager.getLogger(RateLimiter.class);
+    private static final int MAX_RETRIES = 5;
+    private static final long DEFAULT_BACKOFF_MILLIS = 100;
+    private static final long MAX_BACKOFF_MILLIS = 20_000;
+    private static final double DECREASE_FACTOR = 0.5;
+    private static final double INCREASE_PER_SUCCESS = 0.1;
+    private static final double MIN_PERMITS_PER_SECOND = 0.5;
+    private final String name;
+    private final double maxPermitsPerSecond;
+    private final double burst;
+    private final long backoffMillis;
+    private final AtomicLong permits = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+    private final AtomicLong throttles = new AtomicLong();
+    private double permitsPerSecond;
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+
+    /**
+     * @param name             what the limiter is for, used in the statistics
+     * @param permitsPerSecond the rate the limiter starts with, and never goes above
+     * @param burst            the number of requests that can start at once
+     */
+    public RateLimiter(String name, double permitsPerSecond, int burst) {
+        this(name, permitsPerSecond, burst, DEFAULT_BACKOFF_MILLIS);
+    }
+
+    RateLimiter(String name, double permitsPerSecond, int burst, long backoffMillis) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("Permits per second must be positive. Got: " + permitsPerSecond);
+        }
+        if (burst < 1) {
+            throw new IllegalArgumentException("Burst must be at least 1. Got: " + burst);
+        }
+        this.name = name;
+        this.maxPermitsPerSecond = permitsPerSecond;
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+        this.tokens = burst;
+        this.backoffMillis = backoffMillis;
+    }
+
+    /**
+     * Sends the request once a permit is available, and again after a backoff as long as it is throttled.
+     *
+     * @throws AmazonServiceException the throttling of the last attempt, once the retries are used up, or any
+     *                                other failure of the request
+     */
+    public <T> T call(Supplier<T> request) {
+        for (int attempt = 0; ; attempt++) {
+            acquire();
+            try {
+                T result = request.get();
+                onSuccess();
+                return result;
+            } catch (AmazonServiceException e) {
+                if (!RetryUtils.isThrottlingException(e) || attempt == MAX_RETRIES) {
+                    throw e;
+                }
+                onThrottle();
+                logger.warn("{} throttled ({}). Retry {} of {}", name, e.getErrorCode(), attempt + 1, MAX_RETRIES);
+                sleep(TimeUnit.MILLISECONDS.toNanos(backoff(attempt)));
+            }
+        }
+    }
+
+    /**
+     * Sends an async request once a permit is available, and adapts the rate to its outcome. Throttled async requests
+     * are not retried here but by the retry policy of the client, whose backoff holds a thread of the client's
+     * executor instead of the calling thread.
+     */
+    public <T> CompletableFuture<T> callAsync(Supplier<CompletableFuture<T>> request) {
+        acquire();
+        return request.get().whenComplete((result, failure) -> {
+            if (failure == null) {
+                onSuccess();
+            } else if (failure instanceof AmazonServiceException
+                    && RetryUtils.isThrottlingException((AmazonServiceException) failure)) {
+                onThrottle();
+                logger.warn("{} throttled ({})", name, ((AmazonServiceException) failure).getErrorCode());
+            }
+        });
+    }
+
+    /**
+     * Blocks until the next request may be sent.
+     */
+    public void acquire() {
+        long wait;
+        synchronized (this) {
+            long now = System.nanoTime();
+            tokens = Math.min(burst, tokens + (now - lastRefill) * permitsPerSecond / TimeUnit.SECONDS.toNanos(1));
+            lastRefill = now;
+            tokens--;
+            wait = tokens >= 0 ? 0 : (long) (-tokens / permitsPerSecond * TimeUnit.SECONDS.toNanos(1));
+        }
+        permits.incrementAndGet();
+        if (wait > 0) {
+            waitNanos.addAndGet(wait);
+            sleep(wait);
+        }
+    }
+
+    public synchronized double getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+
+    public void logStatistics() {
+        logger.info("{}: {} requests, {} throttled, waited {} ms, now at {} requests per second", name,
+                permits.get(), throttles.get(), TimeUnit.NANOSECONDS.toMillis(waitNanos.get()),
+                String.format("%.1f", getPermitsPerSecond()));
+    }
+
+    private synchronized void onSuccess() {
+        permitsPerSecond = Math.min(maxPermitsPerSecond, permitsPerSecond + INCREASE_PER_SUCCESS);
+    }
+
+    private synchronized void onThrottle() {
+        throttles.incrementAndGet();
+        permitsPerSecond = Math.max(MIN_PERMITS_PER_SECOND, permitsPerSecond * DECREASE_FACTOR);
+        tokens = Math.min(tokens, 0);
+    }
+
+    /**
+     * Picks a backoff between zero and a ceiling that doubles with every attempt.
+     */
+    private long backoff(int attempt) {
+        long ceiling = Math.min(MAX_BACKOFF_MILLIS, backoffMillis << Math.min(attempt, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    private void sleep(long nanos) {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a permit", e);
+        }
+    }
+}
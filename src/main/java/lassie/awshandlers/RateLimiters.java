@@ -0,0 +1,22 @@
+package lassie.awshandlers;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps one rate limiter per account, service and region for the whole run, since that is the scope AWS throttles
+ * requests in. Every handler of the same account, service and region shares the limiter, however many units of work
+ * run concurrently.
+ */
+public class RateLimiters {
+    private final Map<String, RateLimiter> limiters = new ConcurrentHashMap<>();
+
+    public RateLimiter get(String account, String service, String region, double permitsPerSecond, int burst) {
+        String name = account + "/" + service + "/" + region;
+        return limiters.computeIfAbsent(name, key -> new RateLimiter(key, permitsPerSecond, burst));
+    }
+
+    public void logStatistics() {
+        limiters.values().forEach(RateLimiter::logStatistics);
+    }
+}
@@ -1,9 +1,6 @@
 package lassie.awshandlers;
 
-import com.amazonaws.auth.AWSStaticCredentialsProvider;
-import com.amazonaws.auth.BasicAWSCredentials;
 import com.amazonaws.services.redshift.AmazonRedshift;
-import com.amazonaws.services.redshift.AmazonRedshiftClientBuilder;
 import com.amazonaws.services.redshift.model.*;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -15,17 +12,21 @@ import static lassie.Application.DRY_RUN;
 
 public class RedshiftHandlerImpl  implements RedshiftHandler {
     private static final Logger logger = LogManager.getLogger(RedshiftHandlerImpl.class);
-    private AmazonRedshift redshift;
+    private static final int MAX_RECORDS = 100;
+    private final AmazonRedshift redshift;
+    private final RateLimiter rateLimiter;
+    private final String accountId;
+    private final String region;
 
-    public void instantiateRedshiftClient(String accessKeyId, String secretAccessKey, String region) {
-        logger.info("Instantiating Redshift client in region: {}", region);
-        BasicAWSCredentials awsCreds = new BasicAWSCredentials(accessKeyId, secretAccessKey);
-        AWSStaticCredentialsProvider awsCredentials = new AWSStaticCredentialsProvider(awsCreds);
-        this.redshift = AmazonRedshiftClientBuilder.standard()
-                .withCredentials(awsCredentials)
-                .withRegion(region)
-                .build();
-        logger.info("RedShift client instantiated");
+    /**
+     * @param accountId the account of the clusters, which is part of their ARNs
+     * @param region    the region of the client, which is part of the ARNs of the clusters
+     */
+    public RedshiftHandlerImpl(AmazonRedshift redshift, RateLimiter rateLimiter, String accountId, String region) {
+        this.redshift = redshift;
+        this.rateLimiter = rateLimiter;
+        this.accountId = accountId;
+        this.region = region;
     }
 
     public void tagResource(String id, String key, String value) {
@@ -39,23 +40,39 @@ public class RedshiftHandlerImpl  implements RedshiftHandler {
         CreateTagsRequest tagsRequest = new CreateTagsRequest();
         tagsRequest.withResourceName(id);
         tagsRequest.withTags(tag);
-        redshift.createTags(tagsRequest);
+        rateLimiter.call(() -> redshift.createTags(tagsRequest));
         logger.info("Tagged: {} with key: {} value: {}", id, key, value);
     }
 
+    /**
+     * Pages through the clusters and returns the ARNs of those without the tag. The tag filters of DescribeClusters
+     * only select clusters that have a tag, so the clusters without it can't be selected on the server.
+     */
     public List<String> getIdsForUntaggedRedshiftClustersWithoutTag(String tag) {
         logger.info("Describing RedShift clusters");
-        List<String> untaggedCluserIds = new ArrayList<>();
-        DescribeClustersRequest request = new DescribeClustersRequest();
-        DescribeClustersResult response = redshift.describeClusters(request);
-        for (Cluster cluster : response.getClusters()) {
+        List<String> untaggedClusterArns = new ArrayList<>();
+        for (Cluster cluster : getClusters()) {
             if (!hasTag(cluster, tag)) {
-                untaggedCluserIds.add(cluster.getClusterIdentifier());
+                untaggedClusterArns.add(arn(cluster));
             }
         }
-        logger.info("Found {} RedShift clusters without {}", untaggedCluserIds.size(), tag);
-        untaggedCluserIds.forEach(logger::info);
-        return untaggedCluserIds;
+        logger.info("Found {} RedShift clusters without {}", untaggedClusterArns.size(), tag);
+        untaggedClusterArns.forEach(logger::info);
+        return untaggedClusterArns;
+    }
+
+    private Iterable<Cluster> getClusters() {
+        return new Paginator<>(marker -> {
+            DescribeClustersRequest request = new DescribeClustersRequest()
+                    .withMaxRecords(MAX_RECORDS)
+                    .withMarker(marker);
+            DescribeClustersResult response = rateLimiter.call(() -> redshift.describeClusters(request));
+            return new Paginator.Page<>(response.getClusters(), response.getMarker());
+        });
+    }
+
+    private String arn(Cluster cluster) {
+        return "arn:aws:redshift:" + region + ":" + accountId + ":cluster:" + cluster.getClusterIdentifier();
     }
 
     private boolean hasTag(Cluster cluster, String tag) {
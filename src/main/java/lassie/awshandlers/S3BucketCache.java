@@ -0,0 +1,90 @@
+package lassie.awshandlers;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the region and the tags of every bucket that has been looked up during a run. Bucket names are global, so
+ * the buckets are keyed by account and name only, whichever region the log that mentions them comes from. The tags
+ * are updated when a bucket is tagged, so they don't have to be fetched again.
+ */
+public class S3BucketCache {
+    private static final Logger logger = LogManager.getLogger(S3BucketCache.class);
+    private final ConcurrentMap<String, CompletableFuture<Bucket>> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Returns the bucket, loading it on the first request. Requests for a bucket that is being loaded wait for that
+     * load instead of starting their own. A load that fails is not kept, so the next request tries again.
+     */
+    public Bucket get(String account, String bucketName, Supplier<Bucket> loader) {
+        String key = account + "/" + bucketName;
+        CompletableFuture<Bucket> entry = new CompletableFuture<>();
+        CompletableFuture<Bucket> existing = buckets.putIfAbsent(key, entry);
+        if (existing != null) {
+            hits.incrementAndGet();
+            return join(existing);
+        }
+        misses.incrementAndGet();
+        try {
+            Bucket bucket = loader.get();
+            entry.complete(bucket);
+            return bucket;
+        } catch (RuntimeException e) {
+            buckets.remove(key, entry);
+            entry.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private Bucket join(CompletableFuture<Bucket> entry) {
+        try {
+            return entry.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    public void logStatistics() {
+        logger.info("S3 bucket cache: {} hits, {} misses", hits.get(), misses.get());
+    }
+
+    public static class Bucket {
+        private final String region;
+        private final Map<String, String> tags;
+
+        public Bucket(String region, Map<String, String> tags) {
+            this.region = region;
+            this.tags = new ConcurrentHashMap<>(tags);
+        }
+
+        public String getRegion() {
+            return region;
+        }
+
+        public Map<String, String> getTags() {
+            return new HashMap<>(tags);
+        }
+
+        public boolean hasTag(String key) {
+            return tags.containsKey(key);
+        }
+
+        public void putTag(String key, String value) {
+            tags.put(key, value);
+        }
+    }
+}
@@ -1,34 +1,46 @@
 package lassie.awshandlers;
 
-import com.amazonaws.auth.AWSStaticCredentialsProvider;
-import com.amazonaws.auth.BasicAWSCredentials;
-import com.amazonaws.regions.Regions;
 import com.amazonaws.services.s3.AmazonS3;
-import com.amazonaws.services.s3.AmazonS3ClientBuilder;
 import com.amazonaws.services.s3.model.BucketTaggingConfiguration;
+import com.amazonaws.services.s3.model.Region;
 import com.amazonaws.services.s3.model.TagSet;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 
 import static lassie.Application.DRY_RUN;
 
+/**
+ * Looks up buckets through the region of the log that mentions them, but reads and writes their tags through a client
+ * of the region the bucket lives in. The region and the tags of a bucket are fetched once per run and kept in the
+ * bucket cache.
+ */
 public class S3HandlerImpl implements S3Handler {
     private static final Logger logger = LogManager.getLogger(S3HandlerImpl.class);
-    private AmazonS3 s3;
+    private final Function<String, AmazonS3> clients;
+    private final Function<String, RateLimiter> rateLimiters;
+    private final S3BucketCache bucketCache;
+    private final String account;
+    private final String region;
 
-    public void instantiateS3Client(String accessKeyId, String secretAccessKey, String region) {
-        logger.info("Instantiating S3 client in region: {}", region);
-        BasicAWSCredentials awsCredentials = new BasicAWSCredentials(accessKeyId, secretAccessKey);
-        this.s3 = AmazonS3ClientBuilder.standard()
-                .withCredentials(new AWSStaticCredentialsProvider(awsCredentials))
-                .withRegion(Regions.fromName(region))
-                .build();
-        logger.info("S3 client instantiated");
+    /**
+     * @param clients      returns the client of the account for a region
+     * @param rateLimiters returns the rate limiter of the account for a region
+     * @param bucketCache  the buckets that have been looked up during the run
+     * @param account      the account the buckets are cached for
+     * @param region       the region the buckets are looked up from
+     */
+    public S3HandlerImpl(Function<String, AmazonS3> clients, Function<String, RateLimiter> rateLimiters,
+                         S3BucketCache bucketCache, String account, String region) {
+        this.clients = clients;
+        this.rateLimiters = rateLimiters;
+        this.bucketCache = bucketCache;
+        this.account = account;
+        this.region = region;
     }
 
     public void tagBucket(String bucketName, String key, String value) {
@@ -36,40 +48,52 @@ public class S3HandlerImpl implements S3Handler {
             logger.info("Dry run: {}. Did not tag: {} with {}: {}", DRY_RUN, bucketName, key, value);
             return;
         }
-        Map<String, String> newTags = new HashMap<>();
-
-        List<TagSet> existingTagSets = fetchExistingTagSets(bucketName);
-        existingTagSets.forEach(existingTagSet -> newTags.putAll(existingTagSet.getAllTags()));
-
-        List<TagSet> newTagSets = new ArrayList<>();
+        S3BucketCache.Bucket bucket = getBucket(bucketName);
+        Map<String, String> newTags = bucket.getTags();
         newTags.put(key, value);
-        newTagSets.add(new TagSet(newTags));
 
-        s3.setBucketTaggingConfiguration(bucketName, new BucketTaggingConfiguration(newTagSets));
+        BucketTaggingConfiguration configuration =
+                new BucketTaggingConfiguration(Collections.singletonList(new TagSet(newTags)));
+        rateLimiters.apply(bucket.getRegion()).call(() -> {
+            clients.apply(bucket.getRegion()).setBucketTaggingConfiguration(bucketName, configuration);
+            return null;
+        });
+        bucket.putTag(key, value);
         logger.info("Tagged: {} with key: {} value: {}", bucketName, key, value);
     }
 
     public boolean bucketHasTag(String bucketName, String tag) {
-        if (s3.getBucketTaggingConfiguration(bucketName) == null) {
-            return true;
-        }
+        return getBucket(bucketName).hasTag(tag);
+    }
 
-        BucketTaggingConfiguration configuration = s3.getBucketTaggingConfiguration(bucketName);
-        List<TagSet> allTagSets = configuration.getAllTagSets();
-        for (TagSet tagSet : allTagSets) {
-            if (tagSet.getAllTags().containsKey(tag)) {
-                return true;
-            }
-        }
-        return false;
+    private S3BucketCache.Bucket getBucket(String bucketName) {
+        return bucketCache.get(account, bucketName, () -> {
+            String bucketRegion = toRegion(rateLimiters.apply(region)
+                    .call(() -> clients.apply(region).getBucketLocation(bucketName)));
+            logger.debug("Bucket {} is in {}", bucketName, bucketRegion);
+            return new S3BucketCache.Bucket(bucketRegion, fetchTags(bucketName, bucketRegion));
+        });
     }
 
-    private List<TagSet> fetchExistingTagSets(String bucketName) {
-        List<TagSet> existingTagSets = new ArrayList<>();
-        BucketTaggingConfiguration configuration = s3.getBucketTaggingConfiguration(bucketName);
+    private Map<String, String> fetchTags(String bucketName, String bucketRegion) {
+        Map<String, String> tags = new HashMap<>();
+        BucketTaggingConfiguration configuration = rateLimiters.apply(bucketRegion)
+                .call(() -> clients.apply(bucketRegion).getBucketTaggingConfiguration(bucketName));
         if (configuration != null) {
-            existingTagSets = configuration.getAllTagSets();
+            configuration.getAllTagSets().forEach(tagSet -> tags.putAll(tagSet.getAllTags()));
+        }
+        return tags;
+    }
+
+    /**
+     * Translates a bucket location, which is "US" or "EU" for buckets created before those regions had names, to the
+     * name of its region.
+     */
+    private String toRegion(String location) {
+        try {
+            return Region.fromValue(location).toAWSRegion().getName();
+        } catch (IllegalArgumentException e) {
+            return location;
         }
-        return existingTagSets;
     }
-}
\ No newline at end of file
+}
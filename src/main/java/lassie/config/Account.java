@@ -4,7 +4,9 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import lassie.model.Log;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 public class Account {
     private String ownerTag;
@@ -16,7 +18,8 @@ public class Account {
     private String bucketRegion;
     private List<String> resourceTypes;
     private List<String> regions;
-    private List<Log> logs = new ArrayList<>();
+    private Integer downloadThreads;
+    private Map<String, Log> logs = new LinkedHashMap<>();
 
     public Account() {
     }
@@ -32,12 +35,26 @@ public class Account {
         this.regions = regions;
     }
 
-    public void addLog(Log log) {
-        this.logs.add(log);
+    /**
+     * Adds the log to the account. Logs of a region that already has a log are merged into it, so the taggers
+     * process each region once, however many days the logs cover.
+     */
+    public synchronized void addLog(Log log) {
+        Log regionLog = this.logs.putIfAbsent(log.getRegion(), log);
+        if (regionLog != null) {
+            regionLog.merge(log);
+        }
     }
 
-    public List<Log> getLogs() {
-        return this.logs;
+    /**
+     * @return the log of the region, or null if no log of the region has been added
+     */
+    public synchronized Log getLog(String region) {
+        return this.logs.get(region);
+    }
+
+    public synchronized List<Log> getLogs() {
+        return new ArrayList<>(this.logs.values());
     }
 
     public String getOwnerTag() {
@@ -103,4 +120,12 @@ public class Account {
     public void setRegions(List<String> regions) {
         this.regions = regions;
     }
+
+    public Integer getDownloadThreads() {
+        return downloadThreads;
+    }
+
+    public void setDownloadThreads(Integer downloadThreads) {
+        this.downloadThreads = downloadThreads;
+    }
 }
\ No newline at end of file
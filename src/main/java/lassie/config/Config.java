@@ -6,12 +6,29 @@ import java.util.List;
 public class Config {
     private boolean dryRun;
     private String ownerTag;
+    private int downloadThreads;
+    private int listThreads;
+    private boolean streamLogs;
+    private String cacheFolder;
+    private long cacheSize;
+    private String watermarkFile;
+    private int ec2PageSize;
+    private int taggingThreads;
+    private int taggingThreadsPerAccount;
+    private int asyncThreads;
     private List<String> resourceTypes;
     private List<String> regions;
     private List<Account> accounts;
 
     public Config() {
         this.dryRun = true;
+        this.downloadThreads = 10;
+        this.listThreads = 4;
+        this.cacheFolder = "cache";
+        this.ec2PageSize = 1000;
+        this.taggingThreads = 8;
+        this.taggingThreadsPerAccount = 2;
+        this.asyncThreads = 32;
         this.resourceTypes = new ArrayList<>();
         this.regions = new ArrayList<>();
         this.accounts = new ArrayList<>();
@@ -25,6 +42,46 @@ public class Config {
         return ownerTag;
     }
 
+    public int getDownloadThreads() {
+        return downloadThreads;
+    }
+
+    public int getListThreads() {
+        return listThreads;
+    }
+
+    public boolean isStreamLogs() {
+        return streamLogs;
+    }
+
+    public String getCacheFolder() {
+        return cacheFolder;
+    }
+
+    public long getCacheSize() {
+        return cacheSize;
+    }
+
+    public String getWatermarkFile() {
+        return watermarkFile;
+    }
+
+    public int getEc2PageSize() {
+        return ec2PageSize;
+    }
+
+    public int getTaggingThreads() {
+        return taggingThreads;
+    }
+
+    public int getTaggingThreadsPerAccount() {
+        return taggingThreadsPerAccount;
+    }
+
+    public int getAsyncThreads() {
+        return asyncThreads;
+    }
+
     public List<String> getResourceTypes() {
         return resourceTypes;
     }
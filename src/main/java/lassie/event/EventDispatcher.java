@@ -0,0 +1,194 @@
+package lassie.event;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import lassie.model.Event;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads CloudTrail logs in a single streaming pass and routes every record, by its event name, to the extractors
+ * that have been registered for it. The cost of parsing a log stays the same regardless of how many taggers are
+ * interested in it.
+ * <p>
+ * Records whose event name no extractor is registered for are skipped by a byte level prefilter, without being
+ * tokenized. The remaining records are read token by token. Only the event name, the arn of the user and the values
+ * found at the id paths of the registered extractors are kept, every other part of the record is skipped without
+ * being materialized. Memory use is therefore constant, however large the log is.
+ */
+public class EventDispatcher {
+    private static final Logger logger = LogManager.getLogger(EventDispatcher.class);
+    private static final List<String> EVENT_NAME_PATH = Arrays.asList("eventName");
+    private static final List<String> USER_ARN_PATH = Arrays.asList("userIdentity", "arn");
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final Map<String, List<EventExtractor>> extractors = new HashMap<>();
+    private final PathNode paths = createPaths();
+    private final AtomicLong records = new AtomicLong();
+    private final AtomicLong skippedRecords = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong skippedBytes = new AtomicLong();
+
+    public void register(Collection<EventExtractor> eventExtractors) {
+        for (EventExtractor eventExtractor : eventExtractors) {
+            List<EventExtractor> registered = extractors.computeIfAbsent(eventExtractor.getEventName(),
+                    eventName -> new ArrayList<>());
+            if (!registered.contains(eventExtractor)) {
+                registered.add(eventExtractor);
+                paths.add(eventExtractor.getIdPath());
+                logger.debug("Registered extractor: {}", eventExtractor);
+            }
+        }
+    }
+
+    /**
+     * Extracts the events from the log files on disk, one file at a time. A file that can't be parsed is logged and
+     * skipped, so the other files still yield their events.
+     *
+     * @param filePaths the paths of the unzipped log files
+     * @return the events found, mapped by the extractor that found them
+     */
+    public Map<EventExtractor, List<Event>> dispatch(List<String> filePaths) {
+        Map<EventExtractor, List<Event>> events = new HashMap<>();
+        for (String filePath : filePaths) {
+            try (InputStream inputStream = new FileInputStream(filePath)) {
+                dispatch(inputStream).forEach((extractor, found) ->
+                        events.computeIfAbsent(extractor, e -> new ArrayList<>()).addAll(found));
+            } catch (IOException e) {
+                logger.error("Could not parse json: {}", filePath, e);
+                e.printStackTrace();
+            }
+        }
+        return events;
+    }
+
+    /**
+     * Extracts the events from an unzipped log. The stream is read to the end but not closed.
+     *
+     * @param inputStream the json content of a CloudTrail log
+     * @return the events found, mapped by the extractor that found them
+     * @throws MalformedLogException if the log is not valid CloudTrail json
+     */
+    public Map<EventExtractor, List<Event>> dispatch(InputStream inputStream) throws IOException {
+        Map<EventExtractor, List<Event>> events = new HashMap<>();
+        RecordScanner scanner = new RecordScanner(extractors.keySet(), (record, length) -> {
+            try (JsonParser parser = jsonFactory.createParser(record, 0, length)) {
+                parser.nextToken();
+                Map<List<String>, String> values = new HashMap<>();
+                readObject(parser, paths, values);
+                dispatchRecord(values, events);
+            } catch (JsonProcessingException e) {
+                throw new MalformedLogException("Malformed record: " + e.getOriginalMessage(), e);
+            }
+        });
+        scanner.scan(inputStream);
+
+        records.addAndGet(scanner.getRecords());
+        skippedRecords.addAndGet(scanner.getSkippedRecords());
+        bytes.addAndGet(scanner.getBytes());
+        skippedBytes.addAndGet(scanner.getSkippedBytes());
+        logger.debug("Dispatched {} records, skipped {}", scanner.getRecords(), scanner.getSkippedRecords());
+        return events;
+    }
+
+    /**
+     * Logs how many records and bytes the prefilter skipped without parsing them, out of all that were read.
+     */
+    public void logStatistics() {
+        logger.info("Prefilter skipped {} of {} records ({}%) and {} of {} bytes ({}%)",
+                skippedRecords.get(),
+                records.get(),
+                percentage(skippedRecords.get(), records.get()),
+                skippedBytes.get(),
+                bytes.get(),
+                percentage(skippedBytes.get(), bytes.get()));
+    }
+
+    private String percentage(long part, long total) {
+        return String.format("%.1f", total == 0 ? 0.0 : part * 100.0 / total);
+    }
+
+    private void dispatchRecord(Map<List<String>, String> values, Map<EventExtractor, List<Event>> events) {
+        String eventName = values.get(EVENT_NAME_PATH);
+        List<EventExtractor> eventExtractors = eventName == null ? null : extractors.get(eventName);
+        String arn = values.get(USER_ARN_PATH);
+        if (eventExtractors == null || arn == null) {
+            return;
+        }
+        for (EventExtractor eventExtractor : eventExtractors) {
+            String id = values.get(eventExtractor.getIdPath());
+            if (id != null) {
+                logger.info("Event created with Id: {} Owner: {}", id, arn);
+                events.computeIfAbsent(eventExtractor, e -> new ArrayList<>()).add(new Event(id, arn));
+            }
+        }
+    }
+
+    /**
+     * Reads the object the parser is positioned at. Fields that are not on any of the wanted paths are skipped.
+     */
+    private void readObject(JsonParser parser, PathNode node, Map<List<String>, String> values) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            PathNode child = node.children.get(parser.getCurrentName());
+            parser.nextToken();
+            readValue(parser, child, values);
+        }
+    }
+
+    private void readArray(JsonParser parser, PathNode node, Map<List<String>, String> values) throws IOException {
+        int index = 0;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            readValue(parser, node.children.get(String.valueOf(index++)), values);
+        }
+    }
+
+    private void readValue(JsonParser parser, PathNode node, Map<List<String>, String> values) throws IOException {
+        if (node == null) {
+            parser.skipChildren();
+            return;
+        }
+        JsonToken token = parser.getCurrentToken();
+        if (token == JsonToken.START_OBJECT) {
+            readObject(parser, node, values);
+        } else if (token == JsonToken.START_ARRAY) {
+            readArray(parser, node, values);
+        } else if (node.path != null && token.isScalarValue() && token != JsonToken.VALUE_NULL) {
+            values.put(node.path, parser.getText());
+        }
+    }
+
+    private static PathNode createPaths() {
+        PathNode root = new PathNode();
+        root.add(EVENT_NAME_PATH);
+        root.add(USER_ARN_PATH);
+        return root;
+    }
+
+    /**
+     * A tree of the field names leading to the values that are read from each record.
+     */
+    private static class PathNode {
+        private final Map<String, PathNode> children = new HashMap<>();
+        private List<String> path;
+
+        private void add(List<String> path) {
+            PathNode node = this;
+            for (String name : path) {
+                node = node.children.computeIfAbsent(name, n -> new PathNode());
+            }
+            node.path = path;
+        }
+    }
+}
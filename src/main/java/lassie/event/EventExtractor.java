@@ -0,0 +1,36 @@
+package lassie.event;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Describes which CloudTrail records a tagger is interested in, and where in the record the id of the created
+ * resource is found. The id path starts at a top level field of the record, e.g. responseElements, and a numeric
+ * element selects an index in an array.
+ */
+public class EventExtractor {
+    private final String eventName;
+    private final List<String> idPath;
+
+    public EventExtractor(String eventName, String... idPath) {
+        if (idPath.length == 0) {
+            throw new IllegalArgumentException("An id path is required for event: " + eventName);
+        }
+        this.eventName = eventName;
+        this.idPath = Collections.unmodifiableList(Arrays.asList(idPath));
+    }
+
+    public String getEventName() {
+        return eventName;
+    }
+
+    public List<String> getIdPath() {
+        return idPath;
+    }
+
+    @Override
+    public String toString() {
+        return eventName + ":" + String.join(".", idPath);
+    }
+}
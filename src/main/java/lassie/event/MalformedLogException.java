@@ -0,0 +1,16 @@
+package lassie.event;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a log is read completely but is not valid CloudTrail json, so reading it again won't help.
+ */
+public class MalformedLogException extends IOException {
+    public MalformedLogException(String message) {
+        super(message);
+    }
+
+    public MalformedLogException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,203 @@
+package lassie.event;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Splits the raw bytes of a CloudTrail log into records without tokenizing them. The eventName of each record is
+ * read directly from the bytes, and only records with one of the wanted event names are buffered and passed on to
+ * the handler. Everything else is skipped as soon as the event name is known.
+ */
+class RecordScanner {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_TOKEN_LENGTH = 128;
+    private static final int TOP_LEVEL_DEPTH = 1;
+    private static final int RECORD_DEPTH = 3;
+    private final Set<String> eventNames;
+    private final RecordHandler handler;
+    private long records;
+    private long skippedRecords;
+    private long bytes;
+    private long skippedBytes;
+
+    private int depth;
+    private boolean inString;
+    private boolean escaped;
+    private boolean collectingToken;
+    private boolean afterColon;
+    private StringBuilder token = new StringBuilder();
+    private String topLevelKey;
+    private String recordKey;
+    private boolean inRecords;
+    private boolean capturing;
+    private boolean wanted;
+    private byte[] record = new byte[BUFFER_SIZE];
+    private int recordLength;
+    private long recordStart;
+
+    RecordScanner(Set<String> eventNames, RecordHandler handler) {
+        this.eventNames = eventNames;
+        this.handler = handler;
+    }
+
+    void scan(InputStream inputStream) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        boolean started = false;
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            for (int i = 0; i < read; i++) {
+                byte b = buffer[i];
+                if (!started) {
+                    if (Character.isWhitespace(b)) {
+                        bytes++;
+                        continue;
+                    }
+                    if (b != '{') {
+                        throw new MalformedLogException("Expected a json object at byte " + bytes);
+                    }
+                    started = true;
+                }
+                scanByte(b);
+                bytes++;
+            }
+        }
+        if (depth != 0 || inString) {
+            throw new MalformedLogException("Unexpected end of json after " + bytes + " bytes");
+        }
+    }
+
+    private void scanByte(byte b) throws IOException {
+        if (capturing) {
+            append(b);
+        }
+        if (inString) {
+            scanStringByte(b);
+            return;
+        }
+        switch (b) {
+            case '"':
+                inString = true;
+                collectingToken = depth == TOP_LEVEL_DEPTH || (depth == RECORD_DEPTH && inRecords);
+                token.setLength(0);
+                break;
+            case '{':
+                if (depth == RECORD_DEPTH - 1 && inRecords) {
+                    startRecord();
+                }
+                depth++;
+                afterColon = false;
+                break;
+            case '[':
+                if (depth == TOP_LEVEL_DEPTH) {
+                    inRecords = "Records".equals(topLevelKey);
+                }
+                depth++;
+                afterColon = false;
+                break;
+            case '}':
+            case ']':
+                depth--;
+                if (depth == RECORD_DEPTH - 1 && inRecords && b == '}') {
+                    endRecord();
+                }
+                if (depth == TOP_LEVEL_DEPTH) {
+                    inRecords = false;
+                }
+                break;
+            case ':':
+                afterColon = true;
+                break;
+            case ',':
+                afterColon = false;
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void scanStringByte(byte b) {
+        if (escaped) {
+            escaped = false;
+        } else if (b == '\\') {
+            escaped = true;
+        } else if (b == '"') {
+            inString = false;
+            if (collectingToken) {
+                endToken();
+            }
+            return;
+        }
+        if (collectingToken && token.length() < MAX_TOKEN_LENGTH) {
+            token.append((char) b);
+        }
+    }
+
+    private void endToken() {
+        String value = token.length() < MAX_TOKEN_LENGTH ? token.toString() : null;
+        if (depth == TOP_LEVEL_DEPTH) {
+            if (!afterColon) {
+                topLevelKey = value;
+            }
+            return;
+        }
+        if (!afterColon) {
+            recordKey = value;
+        } else if ("eventName".equals(recordKey) && capturing) {
+            wanted = value != null && eventNames.contains(value);
+            if (!wanted) {
+                capturing = false;
+                recordLength = 0;
+            }
+        }
+    }
+
+    private void startRecord() {
+        capturing = true;
+        wanted = false;
+        recordKey = null;
+        recordLength = 0;
+        recordStart = bytes;
+        append((byte) '{');
+    }
+
+    private void endRecord() throws IOException {
+        records++;
+        if (capturing && wanted) {
+            handler.handle(record, recordLength);
+        } else {
+            skippedRecords++;
+            skippedBytes += bytes - recordStart + 1;
+        }
+        capturing = false;
+        recordLength = 0;
+    }
+
+    private void append(byte b) {
+        if (recordLength == record.length) {
+            record = Arrays.copyOf(record, record.length * 2);
+        }
+        record[recordLength++] = b;
+    }
+
+    long getRecords() {
+        return records;
+    }
+
+    long getSkippedRecords() {
+        return skippedRecords;
+    }
+
+    long getBytes() {
+        return bytes;
+    }
+
+    long getSkippedBytes() {
+        return skippedBytes;
+    }
+
+    interface RecordHandler {
+        void handle(byte[] record, int length) throws IOException;
+    }
+}
@@ -1,6 +1,7 @@
 package lassie.mocks;
 
 import com.amazonaws.services.ec2.model.*;
+import lassie.model.VolumeIndex;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -82,11 +83,7 @@ public class EC2HandlerMock implements lassie.awshandlers.Ec2Handler {
     }
 
     @Override
-    public void instantiateEC2Client(String accessKeyId, String secretAccessKey, String region) {
-    }
-
-    @Override
-    public void tagResource(String id, String key, String value) {
+    public synchronized void tagResource(String id, String key, String value) {
         Tag tag = new Tag(key, value);
         List<Tag> tags = new ArrayList<>();
         tags.add(tag);
@@ -118,20 +115,19 @@ public class EC2HandlerMock implements lassie.awshandlers.Ec2Handler {
     }
 
     @Override
-    public String getTagValueForInstanceWithId(String tagKey, String instanceId) {
-        Instance instance = instances.get(instanceId);
-        List<Tag> tags = instance.getTags();
-        for (Tag tag : tags) {
-            if (tag.getKey().equals(tagKey))
-                return tag.getValue();
+    public synchronized void tagResources(List<String> ids, String key, String value) {
+        for (String id : ids) {
+            tagResource(id, key, value);
         }
-        return null;
     }
 
     @Override
-    public List<String> getIdsForInstancesWithoutTag(String tag) {
+    public synchronized List<String> getIdsForInstancesWithoutTag(String tag, Collection<String> instanceIds) {
         List<String> instancesWithoutTag = new ArrayList<>();
         for (Instance instance : instances.values()) {
+            if (!instanceIds.contains(instance.getInstanceId())) {
+                continue;
+            }
             List<Tag> tags = instance.getTags();
             if (tags.stream().noneMatch(t -> t.getKey().equals(tag))) {
                 instancesWithoutTag.add(instance.getInstanceId());
@@ -141,9 +137,12 @@ public class EC2HandlerMock implements lassie.awshandlers.Ec2Handler {
     }
 
     @Override
-    public List<String> getIdsForSecurityGroupsWithoutTag(String tag) {
+    public synchronized List<String> getIdsForSecurityGroupsWithoutTag(String tag, Collection<String> groupIds) {
         List<String> securityGroupsWithoutTag = new ArrayList<>();
         for (SecurityGroup securityGroup : securityGroups.values()) {
+            if (!groupIds.contains(securityGroup.getGroupId())) {
+                continue;
+            }
             List<Tag> tags = securityGroup.getTags();
             if (tags.stream().noneMatch(t -> t.getKey().equals(tag))) {
                 securityGroupsWithoutTag.add(securityGroup.getGroupId());
@@ -153,28 +152,26 @@ public class EC2HandlerMock implements lassie.awshandlers.Ec2Handler {
     }
 
     @Override
-    public List<String> getIdsForVolumesWithoutTag(String tag) {
-        List<String> volumesWithoutTag = new ArrayList<>();
+    public synchronized VolumeIndex getVolumeIndex(String tag) {
+        VolumeIndex volumeIndex = new VolumeIndex();
         for (Volume volume : volumes.values()) {
-            List<Tag> tags = volume.getTags();
-            if (tags.stream().noneMatch(t -> t.getKey().equals(tag))) {
-                volumesWithoutTag.add(volume.getVolumeId());
+            if (volume.getTags().stream().noneMatch(t -> t.getKey().equals(tag))) {
+                List<VolumeAttachment> attachments = volume.getAttachments();
+                volumeIndex.addUntaggedVolume(volume.getVolumeId(),
+                        attachments.isEmpty() ? null : attachments.get(0).getInstanceId());
             }
-
         }
-        return volumesWithoutTag;
-    }
-
-    @Override
-    public boolean volumeIsAttachedToInstance(String volumeId) {
-        Volume volume = volumes.get(volumeId);
-        return volume.getAttachments().size() > 0;
-    }
-
-    @Override
-    public String getIdForInstanceVolumeIsAttachedTo(String volumeId) {
-        Volume volume = volumes.get(volumeId);
-        List<VolumeAttachment> attachments = volume.getAttachments();
-        return attachments.get(0).getInstanceId();
+        for (String instanceId : volumeIndex.getAttachedInstanceIds()) {
+            Instance instance = instances.get(instanceId);
+            if (instance == null) {
+                continue;
+            }
+            for (Tag t : instance.getTags()) {
+                if (t.getKey().equals(tag)) {
+                    volumeIndex.addInstanceOwner(instanceId, t.getValue());
+                }
+            }
+        }
+        return volumeIndex;
     }
 }
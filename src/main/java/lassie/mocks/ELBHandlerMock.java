@@ -13,17 +13,19 @@ public class ELBHandlerMock implements lassie.awshandlers.ELBHandler {
 
 
     @Override
-    public void instantiateELBClient(String accessKeyId, String secretAccessKey, String region) {
-
+    public synchronized void tagResource(String id, String key, String value) {
+        logger.info("Tagged: {} with key: {} value: {}", id, key, value);
     }
 
     @Override
-    public void tagResource(String id, String key, String value) {
-        logger.info("Tagged: {} with key: {} value: {}", id, key, value);
+    public synchronized void tagResources(List<String> ids, String key, String value) {
+        for (String id : ids) {
+            tagResource(id, key, value);
+        }
     }
 
     @Override
-    public List<String> getIdsForLoadBalancersWithoutTag(String tag) {
+    public synchronized List<String> getIdsForLoadBalancersWithoutTag(String tag) {
         return loadBalancersWithoutTag;
     }
 }
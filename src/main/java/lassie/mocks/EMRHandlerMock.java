@@ -6,6 +6,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 
@@ -31,12 +32,7 @@ public class EMRHandlerMock implements lassie.awshandlers.EMRHandler {
     }
 
     @Override
-    public void instantiateEMRClient(String accessKeyId, String secretAccessKey, String region) {
-
-    }
-
-    @Override
-    public void tagResource(String id, String key, String value) {
+    public synchronized void tagResource(String id, String key, String value) {
         Tag tag = new Tag(key, value);
         List<Tag> tags = new ArrayList<>();
         tags.add(tag);
@@ -48,9 +44,12 @@ public class EMRHandlerMock implements lassie.awshandlers.EMRHandler {
     }
 
     @Override
-    public List<String> getIdsForClustersWithoutTag(String tag) {
+    public synchronized List<String> getIdsForClustersWithoutTag(String tag, Collection<String> clusterIds) {
         List<String> clustersWithoutTag = new ArrayList<>();
         for (Cluster cluster : clusters.values()) {
+            if (!clusterIds.contains(cluster.getId())) {
+                continue;
+            }
             List<Tag> tags = cluster.getTags();
             if (tags.stream().noneMatch(t -> t.getKey().equals(tag))) {
                 clustersWithoutTag.add(cluster.getId());
@@ -0,0 +1,67 @@
+package lassie.mocks;
+
+import lassie.awshandlers.*;
+import lassie.config.Account;
+
+public class HandlerFactoryMock implements HandlerFactory {
+    private Ec2Handler ec2Handler = new EC2HandlerMock();
+    private EMRHandler emrHandler = new EMRHandlerMock();
+    private RedshiftHandler redshiftHandler = new RedshiftHandlerMock();
+    private ELBHandler elbHandler = new ELBHandlerMock();
+    private S3Handler s3Handler = new S3HandlerMock();
+    private RDSHandler rdsHandler = new RDSHandlerMock();
+
+    @Override
+    public Ec2Handler createEc2Handler(Account account, String region) {
+        return ec2Handler;
+    }
+
+    @Override
+    public EMRHandler createEMRHandler(Account account, String region) {
+        return emrHandler;
+    }
+
+    @Override
+    public RedshiftHandler createRedshiftHandler(Account account, String region) {
+        return redshiftHandler;
+    }
+
+    @Override
+    public ELBHandler createELBHandler(Account account, String region) {
+        return elbHandler;
+    }
+
+    @Override
+    public S3Handler createS3Handler(Account account, String region) {
+        return s3Handler;
+    }
+
+    @Override
+    public RDSHandler createRDSHandler(Account account, String region) {
+        return rdsHandler;
+    }
+
+    public void setEc2Handler(Ec2Handler ec2Handler) {
+        this.ec2Handler = ec2Handler;
+    }
+
+    public void setEmrHandler(EMRHandler emrHandler) {
+        this.emrHandler = emrHandler;
+    }
+
+    public void setRedshiftHandler(RedshiftHandler redshiftHandler) {
+        this.redshiftHandler = redshiftHandler;
+    }
+
+    public void setElbHandler(ELBHandler elbHandler) {
+        this.elbHandler = elbHandler;
+    }
+
+    public void setS3Handler(S3Handler s3Handler) {
+        this.s3Handler = s3Handler;
+    }
+
+    public void setRdsHandler(RDSHandler rdsHandler) {
+        this.rdsHandler = rdsHandler;
+    }
+}
@@ -2,23 +2,31 @@ package lassie.mocks;
 
 import lassie.LogFetcher;
 import lassie.config.Account;
+import lassie.event.EventDispatcher;
 import lassie.model.Log;
 
-import java.util.ArrayList;
-import java.util.List;
-
 public class LogFetcherMock implements LogFetcher {
 
     @Override
-    public void addLogsToAccount(String startDate, List<Account> accounts) {}
+    public void addLogsToAccount(String startDate, Account account, String region, EventDispatcher eventDispatcher) {}
 
     @Override
     public void createTmpFolders() {
 
     }
 
+    @Override
+    public void clearLog(Log log) {
+
+    }
+
     @Override
     public void clearLogs() {
 
     }
+
+    @Override
+    public void shutdown() {
+
+    }
 }
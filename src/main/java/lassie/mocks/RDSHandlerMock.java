@@ -12,16 +12,12 @@ public class RDSHandlerMock implements lassie.awshandlers.RDSHandler {
     public static List <String> dbInstancesWithTag = new ArrayList<>();
 
     @Override
-    public void instantiateRDSClient(String accessKeyId, String secretAccessKey, String region) {
-    }
-
-    @Override
-    public void tagResource(String id, String key, String value) {
+    public synchronized void tagResource(String id, String key, String value) {
         logger.info("Tagged: {} with key: {} value: {}", id, key, value);
     }
 
     @Override
-    public List<String> getIdsForDBInstancesWithoutTag(String tag) {
+    public synchronized List<String> getIdsForDBInstancesWithoutTag(String tag) {
         return dbInstancesWithoutTag;
     }
 }
@@ -33,12 +33,7 @@ public class RedshiftHandlerMock implements lassie.awshandlers.RedshiftHandler {
     }
 
     @Override
-    public void instantiateRedshiftClient(String accessKeyId, String secretAccessKey, String region) {
-
-    }
-
-    @Override
-    public void tagResource(String id, String key, String value) {
+    public synchronized void tagResource(String id, String key, String value) {
         List<Tag> tags = new ArrayList<>();
         Tag tag = new Tag();
         tag.setKey(key);
@@ -52,7 +47,7 @@ public class RedshiftHandlerMock implements lassie.awshandlers.RedshiftHandler {
     }
 
     @Override
-    public List<String> getIdsForUntaggedRedshiftClustersWithoutTag(String tag) {
+    public synchronized List<String> getIdsForUntaggedRedshiftClustersWithoutTag(String tag) {
         List<String> clustersWithoutTag = new ArrayList<>();
         for (Cluster cluster : clusters.values()) {
             List<Tag> tags = cluster.getTags();
@@ -12,16 +12,12 @@ public class S3HandlerMock implements lassie.awshandlers.S3Handler {
     public static List<String> bucketsWithoutTag = new ArrayList<>();
 
     @Override
-    public void instantiateS3Client(String accessKeyId, String secretAccessKey, String region) {
-    }
-
-    @Override
-    public void tagBucket(String bucketName, String key, String value) {
+    public synchronized void tagBucket(String bucketName, String key, String value) {
         logger.info("Tagged: {} with key: {} value: {}", bucketName, key, value);
     }
 
     @Override
-    public boolean bucketHasTag(String bucketName, String tag) {
+    public synchronized boolean bucketHasTag(String bucketName, String tag) {
         return bucketsWithTag.contains(bucketName);
     }
 }
@@ -1,5 +1,10 @@
 package lassie.model;
 
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
 public class Event {
     private String id;
     private String owner;
@@ -23,4 +28,19 @@ public class Event {
     public String getOwner() {
         return owner;
     }
+
+    /**
+     * @return the ids of the events, in the order of the events
+     */
+    public static List<String> ids(List<Event> events) {
+        return events.stream().map(Event::getId).collect(Collectors.toList());
+    }
+
+    /**
+     * @return the ids of the events grouped by owner, with the owners in the order they first appear
+     */
+    public static Map<String, List<String>> idsByOwner(List<Event> events) {
+        return events.stream().collect(Collectors.groupingBy(
+                Event::getOwner, LinkedHashMap::new, Collectors.mapping(Event::getId, Collectors.toList())));
+    }
 }
@@ -1,14 +1,21 @@
 package lassie.model;
 
+import lassie.event.EventExtractor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class Log {
     private String region;
     private List<String> filePaths;
+    private Map<EventExtractor, List<Event>> events = new HashMap<>();
 
     public Log(String region, List<String> filePaths) {
         this.region = region;
-        this.filePaths = filePaths;
+        this.filePaths = new ArrayList<>(filePaths);
     }
 
     public String getRegion() {
@@ -18,4 +25,26 @@ public class Log {
     public List<String> getFilePaths() {
         return filePaths;
     }
+
+    public List<Event> getEvents(EventExtractor eventExtractor) {
+        return events.getOrDefault(eventExtractor, Collections.emptyList());
+    }
+
+    public void addEvents(Map<EventExtractor, List<Event>> events) {
+        events.forEach((extractor, found) ->
+                this.events.computeIfAbsent(extractor, e -> new ArrayList<>()).addAll(found));
+    }
+
+    /**
+     * Adds the files and events of another log of the same region to this one.
+     */
+    public void merge(Log log) {
+        filePaths.addAll(log.filePaths);
+        addEvents(log.events);
+    }
+
+    public void setEvents(Map<EventExtractor, List<Event>> events) {
+        this.events = new HashMap<>();
+        addEvents(events);
+    }
 }
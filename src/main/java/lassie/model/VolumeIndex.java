@@ -0,0 +1,51 @@
+package lassie.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The untagged volumes of a region, the instances they are attached to and the owners of those instances, so that a
+ * volume without an event can inherit the owner of its instance with a lookup instead of a describe call.
+ */
+public class VolumeIndex {
+    private List<String> untaggedVolumeIds = new ArrayList<>();
+    private Map<String, String> instanceIdsByVolumeId = new HashMap<>();
+    private Map<String, String> ownersByInstanceId = new HashMap<>();
+
+    public void addUntaggedVolume(String volumeId, String attachedInstanceId) {
+        untaggedVolumeIds.add(volumeId);
+        if (attachedInstanceId != null) {
+            instanceIdsByVolumeId.put(volumeId, attachedInstanceId);
+        }
+    }
+
+    public void addInstanceOwner(String instanceId, String owner) {
+        ownersByInstanceId.put(instanceId, owner);
+    }
+
+    public List<String> getUntaggedVolumeIds() {
+        return untaggedVolumeIds;
+    }
+
+    public Set<String> getAttachedInstanceIds() {
+        return new LinkedHashSet<>(instanceIdsByVolumeId.values());
+    }
+
+    /**
+     * @return the id of the instance the volume is attached to, or null if it isn't attached
+     */
+    public String getAttachedInstanceId(String volumeId) {
+        return instanceIdsByVolumeId.get(volumeId);
+    }
+
+    /**
+     * @return the owner tag value of the instance, or null if the instance doesn't have one
+     */
+    public String getInstanceOwner(String instanceId) {
+        return ownersByInstanceId.get(instanceId);
+    }
+}
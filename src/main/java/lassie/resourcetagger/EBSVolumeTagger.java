@@ -1,105 +1,79 @@
 package lassie.resourcetagger;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonDeserializer;
-import com.google.gson.reflect.TypeToken;
-import com.jayway.jsonpath.JsonPath;
 import lassie.awshandlers.Ec2Handler;
+import lassie.awshandlers.HandlerFactory;
 import lassie.config.Account;
+import lassie.event.EventExtractor;
 import lassie.model.Event;
 import lassie.model.Log;
+import lassie.model.VolumeIndex;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.io.File;
-import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 public class EBSVolumeTagger implements ResourceTagger {
     private static final Logger logger = LogManager.getLogger(EBSVolumeTagger.class);
+    private static final EventExtractor CREATE_VOLUME = new EventExtractor(
+            "CreateVolume", "responseElements", "volumeId");
+    private final HandlerFactory handlerFactory;
     private Ec2Handler ec2Handler;
     private List<Event> events = new ArrayList<>();
 
     @Override
-    public void tagResources(Account account) {
-        for (Log log : account.getLogs()) {
-            ec2Handler.instantiateEC2Client(account.getAccessKeyId(), account.getSecretAccessKey(), log.getRegion());
-            parseJson(log.getFilePaths());
-            filterEventsWithoutTag(account.getOwnerTag());
-            tag(account.getOwnerTag());
-        }
+    public List<EventExtractor> getEventExtractors() {
+        return Collections.singletonList(CREATE_VOLUME);
     }
 
-    public EBSVolumeTagger(Ec2Handler ec2Handler) {
-        this.ec2Handler = ec2Handler;
+    @Override
+    public void tagResources(Account account, Log log) {
+        this.ec2Handler = handlerFactory.createEc2Handler(account, log.getRegion());
+        events.addAll(log.getEvents(CREATE_VOLUME));
+        filterEventsWithoutTag(account.getOwnerTag());
+        tag(account.getOwnerTag());
     }
 
-    private void parseJson(List<String> filePaths) {
-        logger.info("Parsing json");
-        String jsonPath = "$..Records[?(@.eventName == 'CreateVolume' && @.responseElements != null)]";
-        for (String filePath : filePaths) {
-            try {
-                String json = JsonPath.parse(new File(filePath)).read(jsonPath).toString();
-                GsonBuilder gsonBuilder = new GsonBuilder();
-                JsonDeserializer<Event> deserializer = (jsonElement, type, context) -> {
-                    String id = jsonElement
-                            .getAsJsonObject().get("responseElements")
-                            .getAsJsonObject().get("volumeId")
-                            .getAsString();
-                    String owner = jsonElement.getAsJsonObject()
-                            .get("userIdentity")
-                            .getAsJsonObject()
-                            .get("arn").getAsString();
-                    logger.info("Event created with Id: {} Owner: {}", id, owner);
-                    return new Event(id, owner);
-                };
-                gsonBuilder.registerTypeAdapter(Event.class, deserializer);
-                Gson gson = gsonBuilder.setLenient().create();
-                List<Event> createVolumeEvents = gson.fromJson(
-                        json, new TypeToken<List<Event>>() {
-                        }.getType());
-                events.addAll(createVolumeEvents);
-            } catch (IOException e) {
-                logger.error("Could nog parse json: ", e);
-                e.printStackTrace();
-            }
-        }
-        logger.info("Done parsing json");
+    public EBSVolumeTagger(HandlerFactory handlerFactory) {
+        this.handlerFactory = handlerFactory;
     }
 
     private void filterEventsWithoutTag(String ownerTag) {
         logger.info("Filtering EBS volumes without: {}", ownerTag);
         List<Event> untaggedVolumes = new ArrayList<>();
 
-        List<String> untaggedVolumeIds = ec2Handler.getIdsForVolumesWithoutTag(ownerTag);
+        VolumeIndex volumeIndex = ec2Handler.getVolumeIndex(ownerTag);
+        Set<String> untaggedVolumeIds = new HashSet<>(volumeIndex.getUntaggedVolumeIds());
 
         for (Event event : events) {
-            if (untaggedVolumeIds.stream().anyMatch(id -> id.equals(event.getId()))) {
+            if (untaggedVolumeIds.contains(event.getId())) {
                 untaggedVolumes.add(event);
             }
         }
 
-        List<String> volumesWithoutEvents = new ArrayList<>();
-        volumesWithoutEvents.addAll(getIdsForUntaggedVolumesWithoutEvents(untaggedVolumeIds));
-        try {
-            for (String id : volumesWithoutEvents) {
-                logger.info("Can't find {} in the log files. Checking if it's attached to an instance", id);
-                if (ec2Handler.volumeIsAttachedToInstance(id)) {
-                    String instanceId = ec2Handler.getIdForInstanceVolumeIsAttachedTo(id);
-                    logger.info("Volume {} is attached to instance: {}. Trying to fetch the {} of the instance",
-                            id,
-                            instanceId,
-                            ownerTag);
+        for (String id : getIdsForUntaggedVolumesWithoutEvents(volumeIndex.getUntaggedVolumeIds())) {
+            logger.info("Can't find {} in the log files. Checking if it's attached to an instance", id);
+            String instanceId = volumeIndex.getAttachedInstanceId(id);
+            if (instanceId == null) {
+                continue;
+            }
+            logger.info("Volume {} is attached to instance: {}. Trying to fetch the {} of the instance",
+                    id,
+                    instanceId,
+                    ownerTag);
 
-                    String instanceOwner = ec2Handler.getTagValueForInstanceWithId(ownerTag, instanceId);
-                    untaggedVolumes.add(new Event(id, instanceOwner));
-                    logger.info("Found {}. Prepared volume for tagging", ownerTag);
-                }
+            String instanceOwner = volumeIndex.getInstanceOwner(instanceId);
+            if (instanceOwner == null) {
+                logger.warn("Instance: {} does not have a tag with key {}. "
+                        + "Tag the instance before you try to tag the EBSVolume", instanceId, ownerTag);
+                continue;
             }
-        } catch (IllegalArgumentException e) {
-            logger.warn(e.getMessage() + ". Tag the instance before you try to tag the EBSVolume");
+            untaggedVolumes.add(new Event(id, instanceOwner));
+            logger.info("Found {}. Prepared volume for tagging", ownerTag);
         }
 
         this.events = untaggedVolumes;
@@ -108,9 +82,10 @@ public class EBSVolumeTagger implements ResourceTagger {
 
     private List<String> getIdsForUntaggedVolumesWithoutEvents(List<String> untaggedVolumeIds) {
         List<String> volumesWithoutEvents = new ArrayList<>();
+        Set<String> eventIds = events.stream().map(Event::getId).collect(Collectors.toSet());
 
         for (String untaggedVolumeId : untaggedVolumeIds) {
-            if (events.stream().noneMatch(event -> event.getId().equals(untaggedVolumeId))) {
+            if (!eventIds.contains(untaggedVolumeId)) {
                 volumesWithoutEvents.add(untaggedVolumeId);
             }
         }
@@ -122,9 +97,7 @@ public class EBSVolumeTagger implements ResourceTagger {
         if (events.size() == 0) {
             logger.info("No untagged Volumes found in log files");
         }
-        for (Event event : events) {
-            ec2Handler.tagResource(event.getId(), ownerTag, event.getOwner());
-        }
+        Event.idsByOwner(events).forEach((owner, ids) -> ec2Handler.tagResources(ids, ownerTag, owner));
         this.events = new ArrayList<>();
         logger.info("Tagging volumes complete");
     }
@@ -1,79 +1,47 @@
 package lassie.resourcetagger;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonDeserializer;
-import com.google.gson.reflect.TypeToken;
-import com.jayway.jsonpath.JsonPath;
 import lassie.awshandlers.Ec2Handler;
+import lassie.awshandlers.HandlerFactory;
 import lassie.config.Account;
+import lassie.event.EventExtractor;
 import lassie.model.Event;
 import lassie.model.Log;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.io.File;
-import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class EC2InstanceTagger implements ResourceTagger {
     private static final Logger logger = LogManager.getLogger(EC2InstanceTagger.class);
+    private static final EventExtractor RUN_INSTANCES = new EventExtractor(
+            "RunInstances", "responseElements", "instancesSet", "items", "0", "instanceId");
+    private final HandlerFactory handlerFactory;
     private Ec2Handler ec2Handler;
     private List<Event> events = new ArrayList<>();
 
-    public EC2InstanceTagger(Ec2Handler ec2Handler) {
-        this.ec2Handler = ec2Handler;
+    public EC2InstanceTagger(HandlerFactory handlerFactory) {
+        this.handlerFactory = handlerFactory;
     }
 
     @Override
-    public void tagResources(Account account) {
-        for (Log log : account.getLogs()) {
-            ec2Handler.instantiateEC2Client(account.getAccessKeyId(), account.getSecretAccessKey(), log.getRegion());
-            parseJson(log.getFilePaths());
-            filterEventsWithoutTag(account.getOwnerTag());
-            tag(account.getOwnerTag());
-        }
+    public List<EventExtractor> getEventExtractors() {
+        return Collections.singletonList(RUN_INSTANCES);
     }
 
-    private void parseJson(List<String> filePaths) {
-        logger.info("Parsing json");
-        String jsonPath = "$..Records[?(@.eventName == 'RunInstances' && @.responseElements != null)]";
-        for (String filePath : filePaths) {
-            try {
-                String json = JsonPath.parse(new File(filePath)).read(jsonPath).toString();
-                GsonBuilder gsonBuilder = new GsonBuilder();
-                JsonDeserializer<Event> deserializer = (jsonElement, type, context) -> {
-                    String id = jsonElement
-                            .getAsJsonObject().get("responseElements")
-                            .getAsJsonObject().get("instancesSet")
-                            .getAsJsonObject().get("items")
-                            .getAsJsonArray().get(0).getAsJsonObject().get("instanceId")
-                            .getAsString();
-                    String owner = jsonElement
-                            .getAsJsonObject().get("userIdentity")
-                            .getAsJsonObject().get("arn")
-                            .getAsString();
-                    logger.info("Event created with Id: {} Owner: {}", id, owner);
-                    return new Event(id, owner);
-                };
-                gsonBuilder.registerTypeAdapter(Event.class, deserializer);
-                Gson gson = gsonBuilder.setLenient().create();
-                List<Event> runInstancesEvents = gson.fromJson(json, new TypeToken<List<Event>>() {
-                }.getType());
-                events.addAll(runInstancesEvents);
-            } catch (IOException e) {
-                logger.error("Could not parse json: ", e);
-                e.printStackTrace();
-            }
-        }
-        logger.info("Done parsing json");
+    @Override
+    public void tagResources(Account account, Log log) {
+        this.ec2Handler = handlerFactory.createEc2Handler(account, log.getRegion());
+        events.addAll(log.getEvents(RUN_INSTANCES));
+        filterEventsWithoutTag(account.getOwnerTag());
+        tag(account.getOwnerTag());
     }
 
     private void filterEventsWithoutTag(String ownerTag) {
         logger.info("Filtering EC2 instances without: {}", ownerTag);
         List<Event> untaggedInstances = new ArrayList<>();
-        List<String> untaggedInstanceIds = ec2Handler.getIdsForInstancesWithoutTag(ownerTag);
+        List<String> untaggedInstanceIds = ec2Handler.getIdsForInstancesWithoutTag(ownerTag, Event.ids(events));
         for (Event event : events) {
             if (untaggedInstanceIds.stream().anyMatch(id -> id.equals(event.getId()))) {
                 untaggedInstances.add(event);
@@ -89,9 +57,7 @@ public class EC2InstanceTagger implements ResourceTagger {
         if (events.size() == 0) {
             logger.info("No untagged EC2 instances found in log files");
         }
-        for (Event event : events) {
-            ec2Handler.tagResource(event.getId(), ownerTag, event.getOwner());
-        }
+        Event.idsByOwner(events).forEach((owner, ids) -> ec2Handler.tagResources(ids, ownerTag, owner));
         this.events = new ArrayList<>();
         logger.info("Done tagging EC2 instances");
     }
@@ -1,72 +1,41 @@
 package lassie.resourcetagger;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonDeserializer;
-import com.google.gson.reflect.TypeToken;
-import com.jayway.jsonpath.JsonPath;
+import lassie.awshandlers.HandlerFactory;
 import lassie.awshandlers.RDSHandler;
 import lassie.config.Account;
+import lassie.event.EventExtractor;
 import lassie.model.Event;
 import lassie.model.Log;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.io.File;
-import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class RDSDBInstanceTagger implements ResourceTagger {
     private static final Logger logger = LogManager.getLogger(RDSDBInstanceTagger.class);
+    private static final EventExtractor CREATE_DB_INSTANCE = new EventExtractor(
+            "CreateDBInstance", "responseElements", "dBInstanceArn");
     private List<Event> events = new ArrayList<>();
+    private final HandlerFactory handlerFactory;
     private RDSHandler rdsHandler;
 
-    public RDSDBInstanceTagger(RDSHandler rdsHandler) {
-        this.rdsHandler = rdsHandler;
+    public RDSDBInstanceTagger(HandlerFactory handlerFactory) {
+        this.handlerFactory = handlerFactory;
     }
 
     @Override
-    public void tagResources(Account account) {
-        for (Log log : account.getLogs()) {
-            rdsHandler.instantiateRDSClient(account.getAccessKeyId(), account.getSecretAccessKey(), account.getRegions().get(0));
-            parseJson(log.getFilePaths());
-            filterEventsWithoutTag(account.getOwnerTag());
-            tag(account.getOwnerTag());
-        }
+    public List<EventExtractor> getEventExtractors() {
+        return Collections.singletonList(CREATE_DB_INSTANCE);
     }
 
-    private void parseJson(List<String> filePaths) {
-        logger.info("Parsing json");
-        String jsonPath = "$..Records[?(@.eventName == 'CreateDBInstance' && @.responseElements != null)]";
-        for (String filePath : filePaths) {
-            try {
-                String json = JsonPath.parse(new File(filePath)).read(jsonPath).toString();
-                GsonBuilder gsonBuilder = new GsonBuilder();
-                JsonDeserializer<Event> deserializer = (jsonElement, type, context) -> {
-                    String id = jsonElement
-                            .getAsJsonObject().get("responseElements")
-                            .getAsJsonObject().get("dBInstanceArn")
-                            .getAsString();
-                    String owner = jsonElement
-                            .getAsJsonObject().get("userIdentity")
-                            .getAsJsonObject().get("arn")
-                            .getAsString();
-                    logger.info("Event created with Id: {} Owner: {}", id, owner);
-                    return new Event(id, owner);
-                };
-                gsonBuilder.registerTypeAdapter(Event.class, deserializer);
-                Gson gson = gsonBuilder.setLenient().create();
-                List<Event> createDBInstanceEvents = gson.fromJson(
-                        json, new TypeToken<List<Event>>() {
-                        }.getType());
-                events.addAll(createDBInstanceEvents);
-            } catch (IOException e) {
-                logger.error("Could not parse json: ", e);
-                e.printStackTrace();
-            }
-        }
-        logger.info("Done parsing json");
+    @Override
+    public void tagResources(Account account, Log log) {
+        this.rdsHandler = handlerFactory.createRDSHandler(account, log.getRegion());
+        events.addAll(log.getEvents(CREATE_DB_INSTANCE));
+        filterEventsWithoutTag(account.getOwnerTag());
+        tag(account.getOwnerTag());
     }
 
     private void filterEventsWithoutTag(String ownerTag) {
@@ -1,85 +1,63 @@
 package lassie.resourcetagger;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonDeserializer;
-import com.google.gson.reflect.TypeToken;
-import com.jayway.jsonpath.JsonPath;
+import lassie.awshandlers.HandlerFactory;
 import lassie.awshandlers.RedshiftHandler;
 import lassie.config.Account;
+import lassie.event.EventExtractor;
 import lassie.model.Event;
 import lassie.model.Log;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.io.File;
-import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 public class RedshiftClusterTagger implements ResourceTagger {
     private static final Logger logger = LogManager.getLogger(RedshiftClusterTagger.class);
+    private static final EventExtractor CREATE_CLUSTER = new EventExtractor(
+            "CreateCluster", "responseElements", "clusterIdentifier");
+    private final HandlerFactory handlerFactory;
     private RedshiftHandler redshiftHandler;
     private List<Event> events = new ArrayList<>();
 
-    public RedshiftClusterTagger(RedshiftHandler redshiftHandler) {
-        this.redshiftHandler = redshiftHandler;
+    public RedshiftClusterTagger(HandlerFactory handlerFactory) {
+        this.handlerFactory = handlerFactory;
     }
 
     @Override
-    public void tagResources(Account account) {
-        for (Log log : account.getLogs()) {
-            redshiftHandler.instantiateRedshiftClient(account.getAccessKeyId(), account.getSecretAccessKey(), log.getRegion());
-            parseJson(account, log.getFilePaths());
-            filterEventsWithoutTag(account.getOwnerTag());
-            tag(account.getOwnerTag());
-        }
+    public List<EventExtractor> getEventExtractors() {
+        return Collections.singletonList(CREATE_CLUSTER);
     }
 
-    private void parseJson(Account account, List<String> filePaths) {
-        logger.info("Parsing json");
-        String jsonPath = "$..Records[?(@.eventName == 'CreateCluster' && @.responseElements != null)]";
-        for (String filePath : filePaths) {
-            try {
-                String json = JsonPath.parse(new File(filePath)).read(jsonPath).toString();
-                GsonBuilder gsonBuilder = new GsonBuilder();
-                JsonDeserializer<Event> deserializer = (jsonElement, type, context) -> {
-                    String clusterId = jsonElement
-                            .getAsJsonObject().get("requestParameters")
-                            .getAsJsonObject().get("clusterIdentifier")
-                            .getAsString();
-                    String arn = "arn:aws:redshift:"
-                            + account.getRegions().get(0) + ":"
-                            + account.getAccountId() + ":cluster:"
-                            + clusterId;
-                    String owner = jsonElement
-                            .getAsJsonObject().get("userIdentity")
-                            .getAsJsonObject().get("arn")
-                            .getAsString();
-                    logger.info("Event created with Id: {} Owner: {}", arn, owner);
-                    return new Event(arn, owner);
-                };
-                gsonBuilder.registerTypeAdapter(Event.class, deserializer);
-                Gson gson = gsonBuilder.setLenient().create();
-                List<Event> createClusterEvents = gson.fromJson(
-                        json, new TypeToken<List<Event>>() {
-                        }.getType());
-                events.addAll(createClusterEvents);
-            } catch (IOException e) {
-                logger.error("Could not parse json: ", e);
-                e.printStackTrace();
-            }
+    @Override
+    public void tagResources(Account account, Log log) {
+        this.redshiftHandler = handlerFactory.createRedshiftHandler(account, log.getRegion());
+        addEvents(account, log);
+        filterEventsWithoutTag(account.getOwnerTag());
+        tag(account.getOwnerTag());
+    }
+
+    private void addEvents(Account account, Log log) {
+        for (Event event : log.getEvents(CREATE_CLUSTER)) {
+            String arn = "arn:aws:redshift:"
+                    + log.getRegion() + ":"
+                    + account.getAccountId() + ":cluster:"
+                    + event.getId();
+            events.add(new Event(arn, event.getOwner()));
         }
-        logger.info("Done parsing json");
     }
 
     private void filterEventsWithoutTag(String ownerTag) {
         logger.info("Filtering RedShift clusters without: {}", ownerTag);
         List<Event> untaggedRedShiftClusters = new ArrayList<>();
-        List<String> untaggedRedshiftClusterIds = redshiftHandler.getIdsForUntaggedRedshiftClustersWithoutTag(ownerTag);
+        Set<String> untaggedRedshiftClusterArns =
+                new HashSet<>(redshiftHandler.getIdsForUntaggedRedshiftClustersWithoutTag(ownerTag));
 
         for (Event event : events) {
-            if (untaggedRedshiftClusterIds.stream().anyMatch(id -> id.equals(event.getId()))) {
+            if (untaggedRedshiftClusterArns.contains(event.getId())) {
                 untaggedRedShiftClusters.add(event);
             }
         }
@@ -1,7 +1,13 @@
 package lassie.resourcetagger;
 
 import lassie.config.Account;
+import lassie.event.EventExtractor;
+import lassie.model.Log;
+
+import java.util.List;
 
 public interface ResourceTagger {
-    void tagResources(Account account);
+    List<EventExtractor> getEventExtractors();
+
+    void tagResources(Account account, Log log);
 }
@@ -1,79 +1,37 @@
 package lassie.resourcetagger;
 
-import lassie.Application;
-import lassie.awshandlers.*;
-import lassie.mocks.*;
+import lassie.awshandlers.HandlerFactory;
 
 public class ResourceTaggerFactory {
 
-    private Ec2Handler ec2Handler;
-    private EMRHandler emrHandler;
-    private RedshiftHandler redshiftHandler;
-    private ELBHandler elbHandler;
-    private S3Handler s3Handler;
-    private RDSHandler rdsHandler;
+    private final HandlerFactory handlerFactory;
 
-    public ResourceTaggerFactory() {
-        if (!Application.mockMode) {
-            this.ec2Handler = new EC2HandlerImpl();
-            this.emrHandler = new EMRHandlerImpl();
-            this.redshiftHandler = new RedshiftHandlerImpl();
-            this.elbHandler = new ELBHandlerImpl();
-            this.s3Handler = new S3HandlerImpl();
-            this.rdsHandler = new RDSHandlerImpl();
-        } else {
-            this.ec2Handler = new EC2HandlerMock();
-            this.emrHandler = new EMRHandlerMock();
-            this.redshiftHandler = new RedshiftHandlerMock();
-            this.elbHandler = new ELBHandlerMock();
-            this.s3Handler = new S3HandlerMock();
-            this.rdsHandler = new RDSHandlerMock();
-        }
+    /**
+     * @param handlerFactory creates the handlers of the taggers, one set per account and region they tag
+     */
+    public ResourceTaggerFactory(HandlerFactory handlerFactory) {
+        this.handlerFactory = handlerFactory;
     }
 
     public ResourceTagger getResourceTagger(String resourceType) throws UnsupportedResourceTypeException {
         switch (resourceType.toUpperCase()) {
             case "SECURITYGROUP":
-                return new SecurityGroupTagger(ec2Handler);
+                return new SecurityGroupTagger(handlerFactory);
             case "S3BUCKET":
-                return new S3BucketTagger(s3Handler);
+                return new S3BucketTagger(handlerFactory);
             case "EBSVOLUME":
-                return new EBSVolumeTagger(ec2Handler);
+                return new EBSVolumeTagger(handlerFactory);
             case "RDSDBINSTANCE":
-                return new RDSDBInstanceTagger(rdsHandler);
+                return new RDSDBInstanceTagger(handlerFactory);
             case "REDSHIFTCLUSTER":
-                return new RedshiftClusterTagger(redshiftHandler);
+                return new RedshiftClusterTagger(handlerFactory);
             case "EC2INSTANCE":
-                return new EC2InstanceTagger(ec2Handler);
+                return new EC2InstanceTagger(handlerFactory);
             case "EMRCLUSTER":
-                return new EMRClusterTagger(emrHandler);
+                return new EMRClusterTagger(handlerFactory);
             case "LOADBALANCER":
-                return new LoadBalancerTagger(elbHandler);
+                return new LoadBalancerTagger(handlerFactory);
         }
         throw new UnsupportedResourceTypeException(resourceType + " is not a supported resource type");
     }
-
-    public void setEc2Handler(Ec2Handler ec2Handler) {
-        this.ec2Handler = ec2Handler;
-    }
-
-    public void setEmrHandler(EMRHandler emrHandler) {
-        this.emrHandler = emrHandler;
-    }
-
-    public void setRedshiftHandler(RedshiftHandler redshiftHandler) {
-        this.redshiftHandler = redshiftHandler;
-    }
-
-    public void setElbHandler(ELBHandler elbHandler) {
-        this.elbHandler = elbHandler;
-    }
-
-    public void setS3Handler(S3Handler s3Handler) {
-        this.s3Handler = s3Handler;
-    }
-
-    public void setRdsHandler(RDSHandler rdsHandler) {
-        this.rdsHandler = rdsHandler;
-    }
-}
\ No newline at end of file
+}
@@ -1,70 +1,41 @@
 package lassie.resourcetagger;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonDeserializer;
-import com.google.gson.reflect.TypeToken;
-import com.jayway.jsonpath.JsonPath;
+import lassie.awshandlers.HandlerFactory;
 import lassie.awshandlers.S3Handler;
 import lassie.config.Account;
+import lassie.event.EventExtractor;
 import lassie.model.Event;
 import lassie.model.Log;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.io.File;
-import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class S3BucketTagger implements ResourceTagger {
     private static final Logger logger = LogManager.getLogger(S3BucketTagger.class);
+    private static final EventExtractor CREATE_BUCKET = new EventExtractor(
+            "CreateBucket", "requestParameters", "bucketName");
+    private final HandlerFactory handlerFactory;
     private S3Handler s3Handler;
     private List<Event> events = new ArrayList<>();
 
-    public S3BucketTagger(S3Handler s3Handler) {
-        this.s3Handler = s3Handler;
+    public S3BucketTagger(HandlerFactory handlerFactory) {
+        this.handlerFactory = handlerFactory;
     }
 
     @Override
-    public void tagResources(Account account) {
-        for (Log log : account.getLogs()) {
-            s3Handler.instantiateS3Client(account.getAccessKeyId(), account.getSecretAccessKey(), log.getRegion());
-            parseJson(log.getFilePaths());
-            filterEventsWithoutTag(account.getOwnerTag());
-            tag(account.getOwnerTag());
-        }
+    public List<EventExtractor> getEventExtractors() {
+        return Collections.singletonList(CREATE_BUCKET);
     }
 
-    private void parseJson(List<String> filePaths) {
-        logger.info("Parsing json");
-        String jsonPath = "$..Records[?(@.eventName == 'CreateBucket' && @.requestParameters != null)]";
-        for (String filePath : filePaths) {
-            try {
-                String json = JsonPath.parse(new File(filePath)).read(jsonPath).toString();
-                GsonBuilder gsonBuilder = new GsonBuilder();
-                JsonDeserializer<Event> deserializer = (jsonElement, type, context) -> {
-                    String id = jsonElement
-                            .getAsJsonObject().get("requestParameters")
-                            .getAsJsonObject().get("bucketName")
-                            .getAsString();
-                    String owner = jsonElement.getAsJsonObject().get("userIdentity")
-                            .getAsJsonObject().get("arn")
-                            .getAsString();
-                    logger.info("Event created with Id: {} Owner: {}", id, owner);
-                    return new Event(id, owner);
-                };
-                gsonBuilder.registerTypeAdapter(Event.class, deserializer);
-                Gson gson = gsonBuilder.setLenient().create();
-                List<Event> runInstancesEvents = gson.fromJson(json, new TypeToken<List<Event>>() {
-                }.getType());
-                events.addAll(runInstancesEvents);
-            } catch (IOException e) {
-                logger.error("Could not parse json: ", e);
-                e.printStackTrace();
-            }
-        }
-        logger.info("Done parsing json");
+    @Override
+    public void tagResources(Account account, Log log) {
+        this.s3Handler = handlerFactory.createS3Handler(account, log.getRegion());
+        events.addAll(log.getEvents(CREATE_BUCKET));
+        filterEventsWithoutTag(account.getOwnerTag());
+        tag(account.getOwnerTag());
     }
 
     private void filterEventsWithoutTag(String ownerTag) {
@@ -1,78 +1,48 @@
 package lassie.resourcetagger;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonDeserializer;
-import com.google.gson.reflect.TypeToken;
-import com.jayway.jsonpath.JsonPath;
 import lassie.awshandlers.Ec2Handler;
+import lassie.awshandlers.HandlerFactory;
 import lassie.config.Account;
+import lassie.event.EventExtractor;
 import lassie.model.Event;
 import lassie.model.Log;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.io.File;
-import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class SecurityGroupTagger implements ResourceTagger {
     private static final Logger logger = LogManager.getLogger(SecurityGroupTagger.class);
+    private static final EventExtractor CREATE_SECURITY_GROUP = new EventExtractor(
+            "CreateSecurityGroup", "responseElements", "groupId");
     private List<Event> events = new ArrayList<>();
+    private final HandlerFactory handlerFactory;
     private Ec2Handler ec2Handler;
 
-    public SecurityGroupTagger(Ec2Handler ec2Handler) {
-        this.ec2Handler = ec2Handler;
+    public SecurityGroupTagger(HandlerFactory handlerFactory) {
+        this.handlerFactory = handlerFactory;
     }
 
     @Override
-    public void tagResources(Account account) {
-        for (Log log : account.getLogs()) {
-            ec2Handler.instantiateEC2Client(account.getAccessKeyId(), account.getSecretAccessKey(), log.getRegion());
-            parseJson(log.getFilePaths());
-            filterEventsWithoutTag(account.getOwnerTag());
-            tag(account.getOwnerTag());
-        }
+    public List<EventExtractor> getEventExtractors() {
+        return Collections.singletonList(CREATE_SECURITY_GROUP);
     }
 
-    private void parseJson(List<String> filePaths) {
-        logger.info("Parsing json");
-        String jsonPath = "$..Records[?(@.eventName == 'CreateSecurityGroup' && @.responseElements != null)]";
-        for (String filePath : filePaths) {
-            try {
-                String json = JsonPath.parse(new File(filePath)).read(jsonPath).toString();
-                GsonBuilder gsonBuilder = new GsonBuilder();
-                JsonDeserializer<Event> deserializer = (jsonElement, type, context) -> {
-                    String id = jsonElement
-                            .getAsJsonObject().get("responseElements")
-                            .getAsJsonObject().get("groupId")
-                            .getAsString();
-                    String owner = jsonElement
-                            .getAsJsonObject().get("userIdentity")
-                            .getAsJsonObject().get("arn")
-                            .getAsString();
-                    logger.info("Event created with Id: {} Owner: {}", id, owner);
-                    return new Event(id, owner);
-                };
-                gsonBuilder.registerTypeAdapter(Event.class, deserializer);
-                Gson gson = gsonBuilder.setLenient().create();
-                List<Event> createSecurityGroupEvents = gson.fromJson(
-                        json, new TypeToken<List<Event>>() {
-                        }.getType());
-                events.addAll(createSecurityGroupEvents);
-            } catch (IOException e) {
-                logger.error("Could not parse json: ", e);
-                e.printStackTrace();
-            }
-        }
-        logger.info("Done parsing json");
+    @Override
+    public void tagResources(Account account, Log log) {
+        this.ec2Handler = handlerFactory.createEc2Handler(account, log.getRegion());
+        events.addAll(log.getEvents(CREATE_SECURITY_GROUP));
+        filterEventsWithoutTag(account.getOwnerTag());
+        tag(account.getOwnerTag());
     }
 
     private void filterEventsWithoutTag(String ownerTag) {
         logger.info("Filtering Security groups without: {}", ownerTag);
         List<Event> untaggedSecurityGroups = new ArrayList<>();
-        List<String> untaggedSecurityGroupIds = ec2Handler.getIdsForSecurityGroupsWithoutTag(ownerTag);
+        List<String> untaggedSecurityGroupIds =
+                ec2Handler.getIdsForSecurityGroupsWithoutTag(ownerTag, Event.ids(events));
 
         for (Event event : events) {
             if (untaggedSecurityGroupIds.stream().anyMatch(id -> id.equals(event.getId()))) {
@@ -89,9 +59,7 @@ public class SecurityGroupTagger implements ResourceTagger {
         if (events.size() == 0) {
             logger.info("No untagged Security groups found in log files");
         }
-        for (Event event : events) {
-            ec2Handler.tagResource(event.getId(), ownerTag, event.getOwner());
-        }
+        Event.idsByOwner(events).forEach((owner, ids) -> ec2Handler.tagResources(ids, ownerTag, owner));
         this.events = new ArrayList<>();
         logger.info("Done tagging Security groups");
     }
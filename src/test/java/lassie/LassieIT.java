@@ -41,13 +41,14 @@ public class LassieIT {
         this.s3Handler = spy(new S3HandlerMock());
         this.rdsHandler = spy(new RDSHandlerMock());
 
-        ResourceTaggerFactory resourceTaggerFactory = new ResourceTaggerFactory();
-        resourceTaggerFactory.setEc2Handler(ec2Handler);
-        resourceTaggerFactory.setEmrHandler(emrHandler);
-        resourceTaggerFactory.setRedshiftHandler(redshiftHandler);
-        resourceTaggerFactory.setElbHandler(elbHandler);
-        resourceTaggerFactory.setS3Handler(s3Handler);
-        resourceTaggerFactory.setRdsHandler(rdsHandler);
+        HandlerFactoryMock handlerFactory = new HandlerFactoryMock();
+        handlerFactory.setEc2Handler(ec2Handler);
+        handlerFactory.setEmrHandler(emrHandler);
+        handlerFactory.setRedshiftHandler(redshiftHandler);
+        handlerFactory.setElbHandler(elbHandler);
+        handlerFactory.setS3Handler(s3Handler);
+        handlerFactory.setRdsHandler(rdsHandler);
+        ResourceTaggerFactory resourceTaggerFactory = new ResourceTaggerFactory(handlerFactory);
 
         this.application = new Application();
         this.application.setResourceTaggerFactory(resourceTaggerFactory);
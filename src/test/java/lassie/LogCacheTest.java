@@ -0,0 +1,117 @@
+package lassie;
+
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class LogCacheTest {
+    private static final int OBJECT_SIZE = 400 * 1024;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+    private String folder;
+    private LogCache logCache;
+
+    @Before
+    public void setUp() throws Exception {
+        this.folder = temporaryFolder.getRoot().getPath();
+        this.logCache = new LogCache(folder, 1);
+    }
+
+    @Test
+    public void storedObjectIsReturnedFromCache() throws Exception {
+        S3ObjectSummary summary = summary("a.json.gz", "etag");
+        assertNull(logCache.open(summary));
+        logCache.store(summary, content()).close();
+        try (InputStream cached = logCache.open(summary)) {
+            assertNotNull(cached);
+        }
+    }
+
+    @Test
+    public void changedETagIsACacheMiss() throws Exception {
+        logCache.store(summary("a.json.gz", "etag"), content()).close();
+        assertNull(logCache.open(summary("a.json.gz", "changed")));
+    }
+
+    @Test
+    public void leastRecentlyUsedObjectIsEvictedWhenCacheIsFull() throws Exception {
+        S3ObjectSummary first = summary("a.json.gz", "etag");
+        S3ObjectSummary second = summary("b.json.gz", "etag");
+        logCache.store(first, content()).close();
+        logCache.store(second, content()).close();
+        for (Path file : cachedFiles()) {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(0));
+        }
+        logCache.open(first).close();
+
+        logCache.store(summary("c.json.gz", "etag"), content()).close();
+
+        assertEquals(2, cachedFiles().size());
+        assertNotNull(logCache.open(first));
+        assertNull(logCache.open(second));
+    }
+
+    @Test
+    public void objectLargerThanTheCacheCanBeRead() throws Exception {
+        S3ObjectSummary summary = summary("a.json.gz", "etag");
+        summary.setSize(3 * OBJECT_SIZE);
+        try (InputStream cached = logCache.store(summary, new ByteArrayInputStream(new byte[3 * OBJECT_SIZE]))) {
+            assertEquals(3 * OBJECT_SIZE, cached.skip(3 * OBJECT_SIZE));
+        }
+    }
+
+    @Test
+    public void storingTheSameObjectTwiceCountsItOnce() throws Exception {
+        S3ObjectSummary first = summary("a.json.gz", "etag");
+        logCache.store(first, content()).close();
+        logCache.store(first, content()).close();
+        logCache.store(summary("b.json.gz", "etag"), content()).close();
+
+        assertEquals(2, cachedFiles().size());
+        assertNotNull(logCache.open(first));
+    }
+
+    @Test
+    public void cacheSurvivesBetweenRuns() throws Exception {
+        S3ObjectSummary summary = summary("a.json.gz", "etag");
+        logCache.store(summary, content()).close();
+        LogCache reopened = new LogCache(folder, 1);
+        try (InputStream cached = reopened.open(summary)) {
+            assertNotNull(cached);
+        }
+    }
+
+    private S3ObjectSummary summary(String key, String eTag) {
+        S3ObjectSummary summary = new S3ObjectSummary();
+        summary.setBucketName("bucket");
+        summary.setKey(key);
+        summary.setETag(eTag);
+        summary.setSize(OBJECT_SIZE);
+        return summary;
+    }
+
+    private InputStream content() {
+        return new ByteArrayInputStream(new byte[OBJECT_SIZE]);
+    }
+
+    private List<Path> cachedFiles() throws IOException {
+        try (Stream<Path> files = Files.list(temporaryFolder.getRoot().toPath())) {
+            return files.collect(Collectors.toList());
+        }
+    }
+}
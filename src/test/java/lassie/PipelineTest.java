@@ -0,0 +1,82 @@
+package lassie;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class PipelineTest {
+
+    @Test
+    public void itemsPassThroughAllStagesInOrder() throws Exception {
+        List<String> processed = Collections.synchronizedList(new ArrayList<>());
+        new Pipeline<Integer>(1)
+                .stage("first", item -> processed.add("first " + item))
+                .stage("second", item -> processed.add("second " + item))
+                .run(Arrays.asList(1, 2, 3));
+
+        assertEquals(6, processed.size());
+        for (int item = 1; item <= 3; item++) {
+            assertTrue(processed.indexOf("first " + item) < processed.indexOf("second " + item));
+        }
+        assertEquals(Arrays.asList("second 1", "second 2", "second 3"), processed.stream()
+                .filter(entry -> entry.startsWith("second"))
+                .collect(Collectors.toList()));
+    }
+
+    @Test
+    public void failedStageIsRethrownAndLaterStagesOnlyGetEarlierItems() throws Exception {
+        List<Integer> tagged = Collections.synchronizedList(new ArrayList<>());
+        try {
+            new Pipeline<Integer>(1)
+                    .stage("fetch", item -> {
+                        if (item == 2) {
+                            throw new IllegalStateException("Fetch failed");
+                        }
+                    })
+                    .stage("tag", tagged::add)
+                    .run(Arrays.asList(1, 2, 3));
+            fail("Expected the failure of the fetch stage");
+        } catch (IllegalStateException e) {
+            assertEquals("Fetch failed", e.getMessage());
+        }
+        assertEquals(Collections.singletonList(1), tagged);
+    }
+
+    @Test(timeout = 10000)
+    public void failedMiddleStageIsRethrownWithoutBlockingEarlierStages() throws Exception {
+        List<Integer> tagged = Collections.synchronizedList(new ArrayList<>());
+        try {
+            new Pipeline<Integer>(1)
+                    .stage("fetch", item -> {
+                    })
+                    .stage("parse", item -> {
+                        if (item == 1) {
+                            throw new IllegalStateException("Parse failed");
+                        }
+                    })
+                    .stage("tag", tagged::add)
+                    .run(Arrays.asList(1, 2, 3, 4, 5, 6));
+            fail("Expected the failure of the parse stage");
+        } catch (IllegalStateException e) {
+            assertEquals("Parse failed", e.getMessage());
+        }
+        assertTrue(tagged.isEmpty());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void failedLastStageIsRethrown() throws Exception {
+        new Pipeline<Integer>(1)
+                .stage("fetch", item -> {
+                })
+                .stage("tag", item -> {
+                    throw new IllegalStateException("Tag failed");
+                })
+                .run(Arrays.asList(1, 2, 3));
+    }
+}
@@ -0,0 +1,88 @@
+package lassie;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class S3ObjectListerTest {
+    private S3ObjectLister lister;
+    private AmazonS3 s3;
+
+    @Before
+    public void setUp() throws Exception {
+        this.lister = new S3ObjectLister(2);
+        this.s3 = mock(AmazonS3.class);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        lister.shutdown();
+    }
+
+    @Test
+    public void truncatedListingIsFollowedToTheLastPage() throws Exception {
+        when(s3.listObjectsV2(any(ListObjectsV2Request.class))).thenAnswer(invocation -> {
+            ListObjectsV2Request request = invocation.getArgument(0);
+            if (request.getContinuationToken() == null) {
+                return page("token", "a", "b");
+            }
+            assertEquals("token", request.getContinuationToken());
+            return page(null, "c");
+        });
+
+        List<String> keys = Collections.synchronizedList(new ArrayList<>());
+        lister.list(s3, Collections.singletonList(new ListObjectsV2Request()), (index, summaries) ->
+                summaries.forEach(summary -> keys.add(summary.getKey())));
+
+        assertEquals(Arrays.asList("a", "b", "c"), keys);
+        verify(s3, times(2)).listObjectsV2(any(ListObjectsV2Request.class));
+    }
+
+    @Test
+    public void pagesArePassedWithTheIndexOfTheirRequest() throws Exception {
+        when(s3.listObjectsV2(any(ListObjectsV2Request.class))).thenAnswer(invocation -> {
+            ListObjectsV2Request request = invocation.getArgument(0);
+            return page(null, request.getPrefix() + "/object");
+        });
+
+        String[] keys = new String[2];
+        lister.list(s3, Arrays.asList(
+                new ListObjectsV2Request().withPrefix("first"),
+                new ListObjectsV2Request().withPrefix("second")),
+                (index, summaries) -> keys[index] = summaries.get(0).getKey());
+
+        assertArrayEquals(new String[]{"first/object", "second/object"}, keys);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void failedListingIsRethrown() throws Exception {
+        when(s3.listObjectsV2(any(ListObjectsV2Request.class))).thenThrow(new IllegalStateException("Access denied"));
+        lister.list(s3, Collections.singletonList(new ListObjectsV2Request()), (index, summaries) -> {
+        });
+    }
+
+    private ListObjectsV2Result page(String nextContinuationToken, String... keys) {
+        ListObjectsV2Result result = new ListObjectsV2Result();
+        for (String key : keys) {
+            S3ObjectSummary summary = new S3ObjectSummary();
+            summary.setKey(key);
+            result.getObjectSummaries().add(summary);
+        }
+        result.setNextContinuationToken(nextContinuationToken);
+        result.setTruncated(nextContinuationToken != null);
+        return result;
+    }
+}
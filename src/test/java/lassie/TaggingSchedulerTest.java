@@ -0,0 +1,88 @@
+package lassie;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class TaggingSchedulerTest {
+    private TaggingScheduler scheduler;
+
+    @Before
+    public void setUp() throws Exception {
+        this.scheduler = new TaggingScheduler(4, 1);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void unitsOfOneAccountDontRunConcurrently() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        for (int i = 0; i < 10; i++) {
+            scheduler.submit("account", () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                sleep();
+                running.decrementAndGet();
+            });
+        }
+        scheduler.awaitCompletion();
+
+        assertEquals(1, maxRunning.get());
+    }
+
+    @Test
+    public void blockedAccountDoesntHoldUpOtherAccounts() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch otherAccountDone = new CountDownLatch(3);
+        scheduler.submit("slow", () -> await(release));
+        scheduler.submit("slow", () -> await(release));
+        for (int i = 0; i < 3; i++) {
+            scheduler.submit("fast", otherAccountDone::countDown);
+        }
+
+        assertTrue(otherAccountDone.await(5, TimeUnit.SECONDS));
+        release.countDown();
+        scheduler.awaitCompletion();
+    }
+
+    @Test
+    public void failureIsRethrownAfterAllUnitsHaveFinished() throws Exception {
+        AtomicInteger finished = new AtomicInteger();
+        scheduler.submit("account", () -> {
+            throw new IllegalStateException("Throttled");
+        });
+        scheduler.submit("account", finished::incrementAndGet);
+        try {
+            scheduler.awaitCompletion();
+            fail("Expected the failure to be rethrown");
+        } catch (IllegalStateException e) {
+            assertEquals("Throttled", e.getMessage());
+        }
+        assertEquals(1, finished.get());
+    }
+
+    private void sleep() {
+        try {
+            Thread.sleep(5);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
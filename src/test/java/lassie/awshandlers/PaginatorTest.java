@@ -0,0 +1,58 @@
+package lassie.awshandlers;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PaginatorTest {
+
+    @Test
+    public void nextTokenIsPassedToTheNextRequest() throws Exception {
+        List<String> requestedTokens = new ArrayList<>();
+        Paginator<String> paginator = new Paginator<>(nextToken -> {
+            requestedTokens.add(nextToken);
+            if (nextToken == null) {
+                return new Paginator.Page<>(Arrays.asList("a", "b"), "page-2");
+            }
+            return new Paginator.Page<>(Collections.singletonList("c"), null);
+        });
+
+        List<String> items = new ArrayList<>();
+        paginator.forEach(items::add);
+
+        assertEquals(Arrays.asList("a", "b", "c"), items);
+        assertEquals(Arrays.asList(null, "page-2"), requestedTokens);
+    }
+
+    @Test
+    public void pagesAreOnlyRequestedWhenNeeded() throws Exception {
+        List<String> requestedTokens = new ArrayList<>();
+        Paginator<String> paginator = new Paginator<>(nextToken -> {
+            requestedTokens.add(nextToken);
+            return new Paginator.Page<>(Collections.singletonList("item"), "more");
+        });
+
+        Iterator<String> iterator = paginator.iterator();
+        assertEquals("item", iterator.next());
+
+        assertEquals(1, requestedTokens.size());
+    }
+
+    @Test
+    public void emptyPagesAreSkipped() throws Exception {
+        Paginator<String> paginator = new Paginator<>(nextToken -> nextToken == null
+                ? new Paginator.Page<>(Collections.emptyList(), "page-2")
+                : new Paginator.Page<>(Collections.singletonList("a"), null));
+
+        Iterator<String> iterator = paginator.iterator();
+        assertTrue(iterator.hasNext());
+        assertEquals("a", iterator.next());
+        assertFalse(iterator.hasNext());
+    }
+}
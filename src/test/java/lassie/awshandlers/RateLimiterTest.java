@@ -0,0 +1,85 @@
+package lassie.awshandlers;
+
+import com.amazonaws.AmazonServiceException;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class RateLimiterTest {
+
+    @Test
+    public void throttledRequestIsRetriedAtHalfTheRate() throws Exception {
+        RateLimiter rateLimiter = new RateLimiter("test", 100, 10, 1);
+        AtomicInteger attempts = new AtomicInteger();
+
+        String result = rateLimiter.call(() -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw throttling();
+            }
+            return "tagged";
+        });
+
+        assertEquals("tagged", result);
+        assertEquals(2, attempts.get());
+        assertEquals(50.1, rateLimiter.getPermitsPerSecond(), 0.001);
+    }
+
+    @Test
+    public void rateGrowsBackAfterSuccessfulRequests() throws Exception {
+        RateLimiter rateLimiter = new RateLimiter("test", 100, 100, 1);
+        AtomicInteger attempts = new AtomicInteger();
+        rateLimiter.call(() -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw throttling();
+            }
+            return null;
+        });
+
+        for (int i = 0; i < 10; i++) {
+            rateLimiter.call(() -> null);
+        }
+
+        assertEquals(51.1, rateLimiter.getPermitsPerSecond(), 0.001);
+    }
+
+    @Test
+    public void otherFailuresAreNotRetried() throws Exception {
+        RateLimiter rateLimiter = new RateLimiter("test", 100, 10, 1);
+        AtomicInteger attempts = new AtomicInteger();
+        AmazonServiceException notFound = new AmazonServiceException("Not found");
+        notFound.setErrorCode("InvalidInstanceID.NotFound");
+
+        try {
+            rateLimiter.call(() -> {
+                attempts.incrementAndGet();
+                throw notFound;
+            });
+            fail("Expected the failure to be rethrown");
+        } catch (AmazonServiceException e) {
+            assertSame(notFound, e);
+        }
+        assertEquals(1, attempts.get());
+        assertEquals(100, rateLimiter.getPermitsPerSecond(), 0.001);
+    }
+
+    @Test
+    public void throttledAsyncRequestLowersTheRate() throws Exception {
+        RateLimiter rateLimiter = new RateLimiter("test", 100, 10, 1);
+        CompletableFuture<String> response = new CompletableFuture<>();
+
+        CompletableFuture<String> result = rateLimiter.callAsync(() -> response);
+        response.completeExceptionally(throttling());
+
+        assertTrue(result.isCompletedExceptionally());
+        assertEquals(50, rateLimiter.getPermitsPerSecond(), 0.001);
+    }
+
+    private AmazonServiceException throttling() {
+        AmazonServiceException exception = new AmazonServiceException("Rate exceeded");
+        exception.setErrorCode("RequestLimitExceeded");
+        return exception;
+    }
+}
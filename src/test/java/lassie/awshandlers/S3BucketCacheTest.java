@@ -0,0 +1,70 @@
+package lassie.awshandlers;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class S3BucketCacheTest {
+    private S3BucketCache bucketCache;
+
+    @Before
+    public void setUp() throws Exception {
+        this.bucketCache = new S3BucketCache();
+    }
+
+    @Test
+    public void concurrentRequestsWaitForTheSameLoad() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread first = new Thread(() -> bucketCache.get("account", "bucket", () -> {
+            loading.countDown();
+            await(release);
+            return load(loads);
+        }));
+        first.start();
+        loading.await();
+        Thread second = new Thread(() -> bucketCache.get("account", "bucket", () -> load(loads)));
+        second.start();
+        while (second.isAlive() && second.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+        first.join();
+        second.join();
+
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void failedLoadIsNotKept() throws Exception {
+        try {
+            bucketCache.get("account", "bucket", () -> {
+                throw new IllegalStateException("Lookup failed");
+            });
+            fail("Expected the failure of the load");
+        } catch (IllegalStateException e) {
+            assertEquals("Lookup failed", e.getMessage());
+        }
+        AtomicInteger loads = new AtomicInteger();
+        assertEquals("eu-west-1", bucketCache.get("account", "bucket", () -> load(loads)).getRegion());
+    }
+
+    private S3BucketCache.Bucket load(AtomicInteger loads) {
+        loads.incrementAndGet();
+        return new S3BucketCache.Bucket("eu-west-1", Collections.emptyMap());
+    }
+
+    private void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
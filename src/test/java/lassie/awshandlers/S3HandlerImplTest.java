@@ -0,0 +1,76 @@
+package lassie.awshandlers;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.BucketTaggingConfiguration;
+import com.amazonaws.services.s3.model.TagSet;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class S3HandlerImplTest {
+    private AmazonS3 logRegionClient;
+    private AmazonS3 bucketRegionClient;
+    private S3HandlerImpl s3Handler;
+
+    @Before
+    public void setUp() throws Exception {
+        this.logRegionClient = mock(AmazonS3.class);
+        this.bucketRegionClient = mock(AmazonS3.class);
+        Map<String, AmazonS3> clients = new HashMap<>();
+        clients.put("ap-south-1", logRegionClient);
+        clients.put("eu-west-1", bucketRegionClient);
+        this.s3Handler = new S3HandlerImpl(clients::get, region -> new RateLimiter(region, 1000, 1000),
+                new S3BucketCache(), "account", "ap-south-1");
+        when(logRegionClient.getBucketLocation("bucket")).thenReturn("EU");
+    }
+
+    @Test
+    public void bucketIsLookedUpOnce() throws Exception {
+        when(bucketRegionClient.getBucketTaggingConfiguration("bucket")).thenReturn(tags("Project", "lassie"));
+
+        assertTrue(s3Handler.bucketHasTag("bucket", "Project"));
+        assertFalse(s3Handler.bucketHasTag("bucket", "Owner"));
+        s3Handler.tagBucket("bucket", "Owner", "jane.doe");
+        assertTrue(s3Handler.bucketHasTag("bucket", "Owner"));
+
+        verify(logRegionClient, times(1)).getBucketLocation("bucket");
+        verify(bucketRegionClient, times(1)).getBucketTaggingConfiguration("bucket");
+    }
+
+    @Test
+    public void tagsAreWrittenInTheRegionOfTheBucket() throws Exception {
+        when(bucketRegionClient.getBucketTaggingConfiguration("bucket")).thenReturn(tags("Project", "lassie"));
+
+        s3Handler.tagBucket("bucket", "Owner", "jane.doe");
+
+        ArgumentCaptor<BucketTaggingConfiguration> configuration =
+                ArgumentCaptor.forClass(BucketTaggingConfiguration.class);
+        verify(bucketRegionClient).setBucketTaggingConfiguration(eq("bucket"), configuration.capture());
+        verify(logRegionClient, never()).setBucketTaggingConfiguration(anyString(),
+                any(BucketTaggingConfiguration.class));
+        Map<String, String> expectedTags = new HashMap<>();
+        expectedTags.put("Project", "lassie");
+        expectedTags.put("Owner", "jane.doe");
+        assertEquals(expectedTags, configuration.getValue().getTagSet().getAllTags());
+    }
+
+    @Test
+    public void bucketWithoutTaggingConfigurationHasNoTags() throws Exception {
+        assertFalse(s3Handler.bucketHasTag("bucket", "Owner"));
+    }
+
+    private BucketTaggingConfiguration tags(String key, String value) {
+        return new BucketTaggingConfiguration(Collections.singletonList(
+                new TagSet(Collections.singletonMap(key, value))));
+    }
+}
@@ -0,0 +1,110 @@
+package lassie.event;
+
+import lassie.model.Event;
+import lassie.resourcetagger.RedshiftClusterTagger;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EventDispatcherTest {
+    private static final EventExtractor RUN_INSTANCES = new EventExtractor(
+            "RunInstances", "responseElements", "instancesSet", "items", "0", "instanceId");
+    private static final EventExtractor CREATE_BUCKET = new EventExtractor(
+            "CreateBucket", "requestParameters", "bucketName");
+    private EventDispatcher eventDispatcher;
+
+    @Before
+    public void setUp() throws Exception {
+        this.eventDispatcher = new EventDispatcher();
+        eventDispatcher.register(asList(RUN_INSTANCES, CREATE_BUCKET));
+    }
+
+    @Test
+    public void registeredEventsAreExtracted() throws Exception {
+        String path = ClassLoader.getSystemResource("ec2instances.json").getPath();
+        Map<EventExtractor, List<Event>> events = eventDispatcher.dispatch(singletonList(path));
+
+        List<Event> runInstances = events.get(RUN_INSTANCES);
+        assertEquals(2, runInstances.size());
+        assertEquals("i-06e9aaf9760467624", runInstances.get(0).getId());
+        assertEquals("john.doe", runInstances.get(0).getOwner());
+        assertEquals("i-07a5bbg4326310341", runInstances.get(1).getId());
+        assertEquals("jane.doe", runInstances.get(1).getOwner());
+        assertFalse(events.containsKey(CREATE_BUCKET));
+    }
+
+    @Test
+    public void unregisteredEventsAreSkipped() throws Exception {
+        Map<EventExtractor, List<Event>> events = eventDispatcher.dispatch(stream("{\"Records\":["
+                + "{\"eventName\":\"DescribeInstances\",\"userIdentity\":{\"arn\":\"arn:aws:iam::1:user/a\"},"
+                + "\"responseElements\":{\"instancesSet\":{\"items\":[{\"instanceId\":\"i-1\"}]}}}]}"));
+
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void eventNameAfterIdIsExtracted() throws Exception {
+        Map<EventExtractor, List<Event>> events = eventDispatcher.dispatch(stream("{\"Records\":["
+                + "{\"requestParameters\":{\"bucketName\":\"BucketOne\",\"acl\":[{\"x\":1}]},"
+                + "\"userIdentity\":{\"arn\":\"arn:aws:iam::1:user/jane.doe\"},\"eventName\":\"CreateBucket\"}]}"));
+
+        List<Event> createBucket = events.get(CREATE_BUCKET);
+        assertEquals(1, createBucket.size());
+        assertEquals("BucketOne", createBucket.get(0).getId());
+        assertEquals("jane.doe", createBucket.get(0).getOwner());
+    }
+
+    @Test
+    public void recordsWithoutIdAreSkipped() throws Exception {
+        Map<EventExtractor, List<Event>> events = eventDispatcher.dispatch(stream("{\"Records\":["
+                + "{\"eventName\":\"RunInstances\",\"userIdentity\":{\"arn\":\"arn:aws:iam::1:user/a\"},"
+                + "\"errorCode\":\"UnauthorizedOperation\",\"responseElements\":null}]}"));
+
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void failedCreateClusterIsSkipped() throws Exception {
+        EventExtractor createCluster = new RedshiftClusterTagger(null).getEventExtractors().get(0);
+        eventDispatcher.register(singletonList(createCluster));
+        Map<EventExtractor, List<Event>> events = eventDispatcher.dispatch(stream("{\"Records\":["
+                + "{\"eventName\":\"CreateCluster\",\"userIdentity\":{\"arn\":\"arn:aws:iam::1:user/a\"},"
+                + "\"errorCode\":\"ClusterAlreadyExists\",\"requestParameters\":{\"clusterIdentifier\":\"r-1\"},"
+                + "\"responseElements\":null}]}"));
+
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void bracesAndQuotesInStringsDoNotSplitRecords() throws Exception {
+        Map<EventExtractor, List<Event>> events = eventDispatcher.dispatch(stream("{\"Records\":["
+                + "{\"eventName\":\"PutBucketPolicy\",\"requestParameters\":{\"policy\":\"{\\\"a\\\":[}\"}},"
+                + "{\"eventName\":\"CreateBucket\",\"userIdentity\":{\"arn\":\"arn:aws:iam::1:user/jane.doe\"},"
+                + "\"requestParameters\":{\"bucketName\":\"Bucket}{\\\"Two\"}}]}"));
+
+        List<Event> createBucket = events.get(CREATE_BUCKET);
+        assertEquals(1, createBucket.size());
+        assertEquals("Bucket}{\"Two", createBucket.get(0).getId());
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedLogThrowsIOException() throws Exception {
+        eventDispatcher.dispatch(stream("{\"Records\":[{\"eventName\":\"CreateBucket\""));
+    }
+
+    private InputStream stream(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+}